@@ -0,0 +1,164 @@
+package antix.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A local stand-in for the Mastodon API, serving the recorded #java page
+ * for any hashtag so that load tests run offline.
+ *
+ * Every page is the recorded statuses with fresh ids below {@code max_id}
+ * (and matching creation dates), so a timeline can be paged through for as
+ * long as the client asks. {@code since_id} requests find nothing new. The
+ * context of a status holds a few of the recorded statuses as replies. Each
+ * response is delayed by {@code latency} milliseconds, give or take half.
+ */
+final class FakeMastodon implements AutoCloseable {
+    private static final String TIMELINE = "/api/v1/timelines/tag/";
+    private static final String STATUSES = "/api/v1/statuses/";
+    // Ids of the newest status of every tag; older pages count down from it
+    private static final long TOP_ID = 113_870_000_000_000_000L;
+    private static final Instant TOP_TIME = Instant.parse("2025-01-20T18:30:00Z");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ArrayNode recorded;
+    private final int latencyMillis;
+    private final HttpServer server;
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+
+    FakeMastodon(int latencyMillis) throws IOException {
+        this.recorded = (ArrayNode) mapper.readTree(Fixtures.resource(Fixtures.TAG_TIMELINE));
+        this.latencyMillis = latencyMillis;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Requests served so far, by endpoint.
+     */
+    Map<String, Long> requests() {
+        var counts = new HashMap<String, Long>();
+        requests.forEach((endpoint, count) -> counts.put(endpoint, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            var query = query(exchange.getRequestURI().getRawQuery());
+            byte[] body;
+            if (path.startsWith(TIMELINE)) {
+                count("timeline");
+                body = timeline(query);
+            } else if (path.startsWith(STATUSES) && path.endsWith("/context")) {
+                count("context");
+                body = context(path.substring(STATUSES.length(), path.length() - "/context".length()));
+            } else {
+                count("other");
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            delay();
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private byte[] timeline(Map<String, String> query) throws IOException {
+        if (query.containsKey("since_id")) {
+            return "[]".getBytes(StandardCharsets.UTF_8);
+        }
+        int limit = Math.min(recorded.size(), Integer.parseInt(query.getOrDefault("limit", "20")));
+        long newest = query.containsKey("max_id") ? Long.parseLong(query.get("max_id")) - 1 : TOP_ID;
+        var page = mapper.createArrayNode();
+        for (int i = 0; i < limit; i++) {
+            page.add(renumber((ObjectNode) recorded.get(i), newest - i));
+        }
+        return mapper.writeValueAsBytes(page);
+    }
+
+    private byte[] context(String statusId) throws IOException {
+        long id = Long.parseLong(statusId);
+        int replies = (int) Math.floorMod(id, 6L);
+        var descendants = mapper.createArrayNode();
+        for (int i = 0; i < replies; i++) {
+            var reply = renumber((ObjectNode) recorded.get((int) Math.floorMod(id + i, (long) recorded.size())), id + 1 + i);
+            reply.put("in_reply_to_id", statusId);
+            descendants.add(reply);
+        }
+        var context = mapper.createObjectNode();
+        context.set("ancestors", mapper.createArrayNode());
+        context.set("descendants", descendants);
+        return mapper.writeValueAsBytes(context);
+    }
+
+    private ObjectNode renumber(ObjectNode status, long id) {
+        var copy = status.deepCopy();
+        copy.put("id", String.valueOf(id));
+        // One status a minute, going back from the newest
+        copy.put("created_at", TOP_TIME.minusSeconds((TOP_ID - id) * 60).toString());
+        return copy;
+    }
+
+    private void delay() {
+        if (latencyMillis <= 0) {
+            return;
+        }
+        long jitter = ThreadLocalRandom.current().nextLong(latencyMillis + 1) - latencyMillis / 2;
+        try {
+            Thread.sleep(latencyMillis + jitter);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void count(String endpoint) {
+        requests.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+    }
+
+    private static Map<String, String> query(String raw) {
+        var params = new HashMap<String, String>();
+        if (raw == null) {
+            return params;
+        }
+        for (var pair : raw.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(pair.substring(0, equals),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+}
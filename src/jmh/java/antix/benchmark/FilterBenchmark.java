@@ -0,0 +1,120 @@
+package antix.benchmark;
+
+import antix.model.MastodonPost;
+import antix.model.MediaAttachment;
+import antix.model.Tag;
+import antix.search.FilterIndex;
+import antix.search.SearchIndexProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * The {@code filter} command over 100k posts: {@link FilterIndex} bitmaps,
+ * then the first page of the grid (which sorts the matches by time), against
+ * testing every post with the same predicate.
+ *
+ * Posts are synthetic, with a skew close to a hashtag timeline: a few
+ * languages, a third with media, few sensitive, favourites and boosts mostly
+ * low.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+    private static final int POSTS = 100_000;
+    private static final String[] LANGUAGES = {"en", "en", "en", "de", "fr", "es", "ja"};
+    private static final String[] TAGS = {"java", "kotlin", "vaadin", "spring", "jvm"};
+    private static final Map<String, Predicate<MastodonPost>> SCANS = Map.of(
+            "lang:fr", post -> "fr".equals(post.getLanguage()),
+            "media -sensitive", post -> !post.getMediaAttachments().isEmpty() && !post.isSensitive(),
+            "lang:fr,en media fav:10", post -> Set.of("fr", "en").contains(post.getLanguage())
+                    && !post.getMediaAttachments().isEmpty() && post.getFavouritesCount() >= 10,
+            "card | boost:50", post -> post.isHasCard() || post.getReblogsCount() >= 50);
+
+    @Param({"lang:fr", "media -sensitive", "lang:fr,en media fav:10", "card | boost:50"})
+    String filter;
+
+    private FilterIndex index;
+    private List<MastodonPost> posts;
+    private Predicate<MastodonPost> scan;
+
+    @Setup
+    public void setUp() {
+        index = new FilterIndex(new SearchIndexProperties(POSTS, 200));
+        posts = new ArrayList<>(POSTS);
+        var random = new Random(42);
+        var now = ZonedDateTime.now(ZoneOffset.UTC);
+        for (int i = 0; i < POSTS; i++) {
+            var post = new MastodonPost();
+            post.setId(String.valueOf(i));
+            // Pages arrive newest first, then older ones as the grid scrolls
+            post.setCreatedAt(now.minusSeconds(i * 30L));
+            post.setLanguage(LANGUAGES[random.nextInt(LANGUAGES.length)]);
+            post.setSensitive(random.nextInt(20) == 0);
+            post.setMediaAttachments(random.nextInt(3) == 0 ? List.of(new MediaAttachment()) : List.of());
+            post.setHasCard(random.nextInt(5) == 0);
+            post.setFavouritesCount((int) Math.min(100_000, Math.exp(random.nextDouble() * 8) - 1));
+            post.setReblogsCount((int) Math.min(100_000, Math.exp(random.nextDouble() * 6) - 1));
+            var tag = new Tag();
+            tag.setName(TAGS[random.nextInt(TAGS.length)]);
+            post.setTags(List.of(tag));
+            index.onIngest(post);
+            posts.add(post);
+        }
+        scan = SCANS.get(filter);
+    }
+
+    @Benchmark
+    public int bitmaps() {
+        return index.filter(filter, List.of()).matches();
+    }
+
+    /**
+     * What the grid shows first: the filter, then its first 50 rows.
+     */
+    @Benchmark
+    public List<MastodonPost> bitmapsFirstPage() {
+        return index.filter(filter, List.of()).fetch(0, 50);
+    }
+
+    /**
+     * Narrowing the {@code #java} timeline, as after {@code h java}.
+     */
+    @Benchmark
+    public int bitmapsWithinTag() {
+        return index.filter(filter, List.of("java")).matches();
+    }
+
+    @Benchmark
+    public int scan() {
+        int matches = 0;
+        for (var post : posts) {
+            if (scan.test(post)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,40 @@
+package antix.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Synthetic data shaped like what mastodon.social returns, and the recorded
+ * payloads in {@code src/test/resources/fixtures}.
+ */
+final class Fixtures {
+    // One page of #java as returned by /api/v1/timelines/tag/java?limit=40
+    static final String TAG_TIMELINE = "/fixtures/tag-timeline-java.json";
+
+    private Fixtures() {
+    }
+
+    static byte[] resource(String name) {
+        try (var in = Fixtures.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing fixture " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String statusHtml(int i) {
+        return "<p>Post " + i + " about <a href=\"https://mastodon.social/tags/java\" class=\"mention hashtag\""
+                + " rel=\"tag\">#<span>java</span></a> and the new release, thanks "
+                + "<span class=\"h-card\" translate=\"no\"><a href=\"https://mastodon.social/@someone\""
+                + " class=\"u-url mention\">@<span>someone</span></a></span> for the write-up!</p>"
+                + "<p>Details: <a href=\"https://example.org/blog/2025/01/release-notes-" + i + "\""
+                + " target=\"_blank\" rel=\"nofollow noopener noreferrer\" translate=\"no\">"
+                + "<span class=\"invisible\">https://</span><span class=\"ellipsis\">example.org/blog/2025/01/</span>"
+                + "<span class=\"invisible\">release-notes-" + i + "</span></a><br />Lorem ipsum dolor sit amet, "
+                + "consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua."
+                + "</p>";
+    }
+}
@@ -0,0 +1,80 @@
+package antix.benchmark;
+
+import antix.model.MastodonPost;
+import antix.service.PostIngest;
+import org.apache.commons.lang3.StringUtils;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rendering the content column and details row of the grid, parsing
+ * HTML on every render (before) versus reading the fields computed at ingest
+ * (after).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridRenderBenchmark {
+    @Param("1000")
+    int rows;
+
+    private List<MastodonPost> posts;
+    // Ingest drops the raw HTML, so it is kept aside for the parse-on-render case
+    private List<String> contents;
+
+    @Setup
+    public void setUp() {
+        posts = new ArrayList<>(rows);
+        contents = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            var post = new MastodonPost();
+            post.setId(String.valueOf(i));
+            post.setContent(Fixtures.statusHtml(i));
+            contents.add(post.getContent());
+            posts.add(PostIngest.ingest(post));
+        }
+    }
+
+    @Benchmark
+    public void parseOnRender(Blackhole blackhole) {
+        for (var content : contents) {
+            blackhole.consume(StringUtils.left(Jsoup.parse(content).text(), 150));
+            blackhole.consume(Jsoup.parse(content).text());
+        }
+    }
+
+    @Benchmark
+    public void precomputed(Blackhole blackhole) {
+        for (var post : posts) {
+            blackhole.consume(post.getPreview());
+            blackhole.consume(post.getPlainText());
+        }
+    }
+
+    @Benchmark
+    public void ingest(Blackhole blackhole) {
+        for (int i = 0; i < rows; i++) {
+            var post = new MastodonPost();
+            post.setContent(contents.get(i));
+            blackhole.consume(PostIngest.ingest(post));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package antix.benchmark;
+
+import antix.model.MastodonPost;
+import antix.service.MastodonJsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Retained heap of the posts a session holds, per 1,000 posts: the recorded
+ * #java page is read again and again through the client's reader, as
+ * scrolling would, and the heap is measured before and after.
+ *
+ * Not a JMH benchmark: {@code mvn -Pbenchmark test-compile exec:exec@footprint}
+ */
+public final class HeapFootprint {
+    private static final int POSTS = 20_000;
+
+    private HeapFootprint() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        byte[] page = Fixtures.resource(Fixtures.TAG_TIMELINE);
+        var reader = new MastodonJsonReader();
+        // Warm up class loading and the interning pools outside the measurement
+        reader.readPosts(new ByteArrayInputStream(page), post -> {
+        });
+
+        long before = usedHeap();
+        List<MastodonPost> held = new ArrayList<>(POSTS);
+        while (held.size() < POSTS) {
+            reader.readPosts(new ByteArrayInputStream(page), held::add);
+        }
+        long after = usedHeap();
+
+        System.out.printf("%d posts, %d KiB of JSON per 1,000 posts%n", held.size(),
+                (long) page.length * 1000 / 40 / 1024);
+        System.out.printf("Retained heap: %d KiB per 1,000 posts (%d bytes per post)%n",
+                (after - before) * 1000 / held.size() / 1024, (after - before) / held.size());
+        // Keeps the posts reachable until measured
+        System.out.println(held.get(held.size() - 1).getId().length() > 0 ? "" : "?");
+    }
+
+    private static long usedHeap() {
+        var memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
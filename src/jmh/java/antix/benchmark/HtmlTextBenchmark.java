@@ -0,0 +1,59 @@
+package antix.benchmark;
+
+import antix.model.MastodonPost;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code Jsoup.parse(...).text()} over the content of the recorded statuses:
+ * mentions, hashtags, shortened links and plain paragraphs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HtmlTextBenchmark {
+    private String[] contents;
+
+    @Setup
+    public void setUp() throws IOException {
+        var mapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        MastodonPost[] posts = mapper.readValue(Fixtures.resource(Fixtures.TAG_TIMELINE), MastodonPost[].class);
+        contents = Arrays.stream(posts).map(MastodonPost::getContent).toArray(String[]::new);
+    }
+
+    @Benchmark
+    public void parseText(Blackhole blackhole) {
+        for (var content : contents) {
+            blackhole.consume(Jsoup.parse(content).text());
+        }
+    }
+
+    @Benchmark
+    public void parseBodyFragmentText(Blackhole blackhole) {
+        for (var content : contents) {
+            blackhole.consume(Jsoup.parseBodyFragment(content).text());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package antix.benchmark;
+
+import antix.model.MastodonPost;
+import antix.service.MastodonJsonReader;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding a recorded page of 40 statuses (with accounts, media attachments,
+ * cards and mentions): a plain {@code MastodonPost[]} read, and the
+ * streaming reader the client uses, which also runs the ingest step.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBindingBenchmark {
+    private byte[] page;
+    private ObjectReader arrayReader;
+    private MastodonJsonReader streamingReader;
+
+    @Setup
+    public void setUp() {
+        page = Fixtures.resource(Fixtures.TAG_TIMELINE);
+        var mapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        arrayReader = mapper.readerFor(MastodonPost[].class);
+        streamingReader = new MastodonJsonReader(mapper, post -> {
+        });
+    }
+
+    @Benchmark
+    public MastodonPost[] bindArray() throws IOException {
+        return arrayReader.readValue(page);
+    }
+
+    @Benchmark
+    public int streamAndIngest(Blackhole blackhole) throws IOException {
+        return streamingReader.readPosts(new ByteArrayInputStream(page), blackhole::consume);
+    }
+}
@@ -0,0 +1,355 @@
+package antix.benchmark;
+
+import antix.Application;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Capacity test: starts the application against a {@link FakeMastodon} and
+ * drives many {@link UiClient} sessions at once through a scripted sequence
+ * of prompt commands, entirely offline.
+ *
+ * Every session opens the view, runs the script once to warm up, then waits
+ * for the others; the heap retained per session is measured at that point.
+ * The script is then run {@code --iterations} times per session, with
+ * {@code --think} milliseconds between commands, while Tomcat's request
+ * threads are sampled. Reported: throughput, p50/p99 latency per command,
+ * heap per session and request thread usage, also written as JSON.
+ *
+ * Not a JMH benchmark: {@code mvn -Pbenchmark test-compile exec:exec@loadtest},
+ * options with {@code -Dloadtest.args="--sessions 100 --latency 80"}.
+ */
+public final class LoadTest {
+    private static final Map<String, String> DEFAULTS = Map.of(
+            "sessions", "50",
+            "iterations", "5",
+            "think", "100",
+            "latency", "50",
+            "ramp-up", "5000",
+            "tags", "java,kotlin,rust,python,golang,linux,opensource,fediverse",
+            "script", "h {tag};n;n;n;p;n;n;n;n;h {tag} {next};n;n;p",
+            "result", "target/benchmark/loadtest-result.json");
+
+    private final Map<String, String> options;
+    private final Map<String, Latencies> latencies = new ConcurrentSkipListMap<>();
+    private final AtomicInteger errors = new AtomicInteger();
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var options = new LinkedHashMap<>(DEFAULTS);
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        new LoadTest(options).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        int sessions = number("sessions");
+        try (var mastodon = new FakeMastodon(number("latency"));
+                var app = start(mastodon.baseUrl())) {
+            var base = URI.create("http://localhost:"
+                    + ((ServletWebServerApplicationContext) app).getWebServer().getPort());
+            var threads = requestThreads(app);
+            var http = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .build();
+            var mapper = new ObjectMapper();
+            var tags = options.get("tags").split(",");
+            var script = options.get("script").split(";");
+
+            // Fills the shared caches with every tag, so that the heap measured
+            // next is what the sessions themselves hold
+            for (int i = 0; i < tags.length; i++) {
+                var warmUp = new UiClient(http, base, mapper);
+                warmUp.open();
+                runScript(warmUp, script, tags, i, false);
+            }
+            long baseline = usedHeap();
+
+            var ready = new CountDownLatch(sessions);
+            var go = new CountDownLatch(1);
+            var done = new CountDownLatch(sessions);
+            var clients = new ArrayList<UiClient>(sessions);
+            long rampUpNanos = TimeUnit.MILLISECONDS.toNanos(number("ramp-up"));
+            for (int i = 0; i < sessions; i++) {
+                var client = new UiClient(http, base, mapper);
+                clients.add(client);
+                int session = i;
+                Thread.ofVirtual().start(() -> {
+                    try {
+                        client.open();
+                        runScript(client, script, tags, session, false);
+                        ready.countDown();
+                        go.await();
+                        for (int iteration = 0; iteration < number("iterations"); iteration++) {
+                            runScript(client, script, tags, session, true);
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                        System.err.println("Session " + session + " aborted: " + e);
+                        ready.countDown();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+                TimeUnit.NANOSECONDS.sleep(rampUpNanos / sessions);
+            }
+            ready.await();
+            long heapPerSession = (usedHeap() - baseline) / sessions;
+
+            var sampler = new ThreadSampler(threads);
+            sampler.start();
+            long started = System.nanoTime();
+            go.countDown();
+            done.await();
+            long elapsed = System.nanoTime() - started;
+            sampler.stop();
+
+            long bytes = clients.stream().mapToLong(UiClient::responseBytes).sum();
+            report(sessions, elapsed, heapPerSession, sampler, mastodon.requests(), bytes / sessions);
+        }
+    }
+
+    private void runScript(UiClient client, String[] script, String[] tags, int session, boolean measured)
+            throws InterruptedException {
+        long think = number("think");
+        for (var step : script) {
+            String command = step.trim()
+                    .replace("{tag}", tags[session % tags.length])
+                    .replace("{next}", tags[(session + 1) % tags.length]);
+            String name = command.split(" ")[0];
+            if (name.equals("scroll")) {
+                // "scroll 500": not a prompt command, the grid is scrolled through 500 rows
+                int rows = Integer.parseInt(command.substring(name.length()).trim());
+                time(measured ? name : null, () -> client.scrollThrough(rows));
+            } else {
+                time(measured ? name : null, () -> client.command(command));
+                if (client.needsScroll()) {
+                    time(measured ? "scroll" : null, client::scroll);
+                }
+            }
+            if (think > 0) {
+                Thread.sleep(think);
+            }
+        }
+    }
+
+    private void time(String name, Step step) throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            step.run();
+        } catch (IOException e) {
+            errors.incrementAndGet();
+            return;
+        }
+        if (name != null) {
+            latencies.computeIfAbsent(name, key -> new Latencies()).add(System.nanoTime() - start);
+        }
+    }
+
+    private ConfigurableApplicationContext start(String mastodonUrl) throws IOException {
+        // A restart class loader would load the application twice
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        var data = Files.createTempDirectory("antix-loadtest");
+        return new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.SERVLET)
+                .properties(
+                        // application.yaml holds Maven placeholders: only defaults and the values below apply
+                        "spring.config.name=loadtest",
+                        "spring.autoconfigure.exclude="
+                                + "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration,"
+                                + "org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration,"
+                                + "com.vaadin.hilla.crud.CrudConfiguration",
+                        "server.port=0",
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=warn",
+                        "vaadin.productionMode=true",
+                        "antix.mastodon.base-url=" + mastodonUrl,
+                        "antix.store.directory=" + data.resolve("store"),
+                        "antix.media.directory=" + data.resolve("media"))
+                .run();
+    }
+
+    private static ThreadPoolExecutor requestThreads(ConfigurableApplicationContext app) {
+        var webServer = (TomcatWebServer) ((ServletWebServerApplicationContext) app).getWebServer();
+        return (ThreadPoolExecutor) webServer.getTomcat().getConnector().getProtocolHandler().getExecutor();
+    }
+
+    private void report(int sessions, long elapsedNanos, long heapPerSession, ThreadSampler threads,
+            Map<String, Long> upstream, long bytesPerSession) throws IOException {
+        double seconds = elapsedNanos / 1e9;
+        long commands = latencies.values().stream().mapToLong(Latencies::count).sum();
+        System.out.printf("%n%d sessions x %s iterations of \"%s\", think %s ms, upstream latency %s ms%n",
+                sessions, options.get("iterations"), options.get("script"), options.get("think"),
+                options.get("latency"));
+        System.out.printf("Throughput: %.1f commands/s (%d in %.1f s), %d errors%n",
+                commands / seconds, commands, seconds, errors.get());
+        System.out.printf("%-8s %8s %9s %9s %9s%n", "command", "count", "p50 ms", "p99 ms", "max ms");
+        var commandResults = new LinkedHashMap<String, Object>();
+        latencies.forEach((name, values) -> {
+            System.out.printf("%-8s %8d %9.1f %9.1f %9.1f%n", name, values.count(),
+                    values.percentile(50) / 1e6, values.percentile(99) / 1e6, values.percentile(100) / 1e6);
+            commandResults.put(name, Map.of(
+                    "count", values.count(),
+                    "p50Millis", values.percentile(50) / 1e6,
+                    "p99Millis", values.percentile(99) / 1e6,
+                    "maxMillis", values.percentile(100) / 1e6));
+        });
+        System.out.printf("Heap per session: %d KiB, UIDL received per session: %d KiB%n",
+                heapPerSession / 1024, bytesPerSession / 1024);
+        System.out.printf("Request threads: %.1f busy on average, %d at most, pool of %d (max %d)%n",
+                threads.meanBusy(), threads.maxBusy(), threads.maxPool(), threads.executor.getMaximumPoolSize());
+        System.out.println("Upstream requests: " + upstream);
+
+        var result = new LinkedHashMap<String, Object>();
+        result.put("options", options);
+        result.put("seconds", seconds);
+        result.put("commandsPerSecond", commands / seconds);
+        result.put("errors", errors.get());
+        result.put("commands", commandResults);
+        result.put("heapBytesPerSession", heapPerSession);
+        result.put("uidlBytesPerSession", bytesPerSession);
+        result.put("requestThreads", Map.of(
+                "meanBusy", threads.meanBusy(),
+                "maxBusy", threads.maxBusy(),
+                "maxPool", threads.maxPool()));
+        result.put("upstreamRequests", upstream);
+        var path = Path.of(options.get("result"));
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(path.toFile(), result);
+        System.out.println("Written to " + path);
+    }
+
+    private int number(String option) {
+        return Integer.parseInt(options.get(option));
+    }
+
+    private static long usedHeap() {
+        var memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Latencies of one command, in nanoseconds.
+     */
+    private static final class Latencies {
+        private long[] values = new long[1024];
+        private int size;
+
+        synchronized void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        synchronized long count() {
+            return size;
+        }
+
+        synchronized long percentile(int percent) {
+            if (size == 0) {
+                return 0;
+            }
+            var sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            // Nearest rank
+            int rank = (int) Math.ceil(percent / 100.0 * size);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+
+    /**
+     * Samples the busy request threads every 10 ms.
+     */
+    private static final class ThreadSampler {
+        private final ThreadPoolExecutor executor;
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final List<Integer> busy = new ArrayList<>();
+        private int maxPool;
+        private Thread thread;
+
+        ThreadSampler(ThreadPoolExecutor executor) {
+            this.executor = executor;
+        }
+
+        void start() {
+            thread = Thread.ofPlatform().daemon().start(() -> {
+                while (running.get()) {
+                    synchronized (busy) {
+                        busy.add(executor.getActiveCount());
+                        maxPool = Math.max(maxPool, executor.getPoolSize());
+                    }
+                    try {
+                        Thread.sleep(Duration.ofMillis(10));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        void stop() throws InterruptedException {
+            running.set(false);
+            thread.join();
+        }
+
+        double meanBusy() {
+            synchronized (busy) {
+                return busy.stream().mapToInt(Integer::intValue).average().orElse(0);
+            }
+        }
+
+        int maxBusy() {
+            synchronized (busy) {
+                return busy.stream().mapToInt(Integer::intValue).max().orElse(0);
+            }
+        }
+
+        int maxPool() {
+            synchronized (busy) {
+                return maxPool;
+            }
+        }
+    }
+}
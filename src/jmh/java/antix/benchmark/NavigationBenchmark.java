@@ -0,0 +1,133 @@
+package antix.benchmark;
+
+import antix.model.MastodonPost;
+import antix.service.TimelineCache;
+import antix.service.TimelineCacheProperties;
+import antix.views.main.ListRows;
+import antix.views.main.PostRows;
+import antix.views.main.TagTimelinePager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The row arithmetic behind the {@code next} and {@code previous} commands
+ * and the line-number column of {@code MainView}, on a fully loaded
+ * {@link TagTimelinePager} and on {@link ListRows} (search results).
+ *
+ * Each call moves one row further, wrapping around at the end, so the whole
+ * timeline is walked rather than the same few rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NavigationBenchmark {
+    @Param({"10", "1000", "100000"})
+    int rows;
+
+    @Param({"pager", "list"})
+    String source;
+
+    private PostRows postRows;
+    private MastodonPost[] all;
+    private MastodonPost selected;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        var posts = new ArrayList<MastodonPost>(rows);
+        var now = ZonedDateTime.now(ZoneOffset.UTC);
+        for (int i = 0; i < rows; i++) {
+            var post = new MastodonPost();
+            post.setId(String.valueOf(i));
+            post.setCreatedAt(now.minusSeconds(i));
+            posts.add(post);
+        }
+        postRows = switch (source) {
+            case "pager" -> new TagTimelinePager("java", new FixedTimelineCache(posts));
+            case "list" -> new ListRows(posts);
+            default -> throw new IllegalArgumentException(source);
+        };
+        postRows.fetch(0, rows);
+        all = posts.toArray(MastodonPost[]::new);
+        selected = all[0];
+    }
+
+    /**
+     * {@code next}: position of the selection, then the row after it.
+     */
+    @Benchmark
+    public MastodonPost next() {
+        int index = postRows.indexOf(selected) + 1;
+        selected = postRows.get(index < rows ? index : 0).orElseThrow();
+        return selected;
+    }
+
+    /**
+     * {@code previous}: position of the selection, then the row before it.
+     */
+    @Benchmark
+    public MastodonPost previous() {
+        int index = postRows.indexOf(selected) - 1;
+        selected = postRows.get(index >= 0 ? index : rows - 1).orElseThrow();
+        return selected;
+    }
+
+    /**
+     * The line-number column, rendered for every visible row.
+     */
+    @Benchmark
+    public int lineNumber() {
+        var post = all[cursor];
+        cursor = cursor + 1 < rows ? cursor + 1 : 0;
+        return postRows.indexOf(post) + 1;
+    }
+
+    /**
+     * Serves a fixed timeline from memory, paged by {@code max_id} like the
+     * real cache.
+     */
+    private static final class FixedTimelineCache extends TimelineCache {
+        private final List<MastodonPost> posts;
+
+        FixedTimelineCache(List<MastodonPost> posts) {
+            super(null, new TimelineCacheProperties(Duration.ofDays(1), 1, 40, 40, Duration.ofSeconds(3)), null);
+            this.posts = posts;
+        }
+
+        @Override
+        public List<MastodonPost> get(String tag) {
+            return posts.subList(0, Math.min(40, posts.size()));
+        }
+
+        @Override
+        public List<MastodonPost> getOlder(String tag, String maxId, int limit) {
+            int from = Integer.parseInt(maxId) + 1;
+            return posts.subList(Math.min(from, posts.size()), Math.min(from + limit, posts.size()));
+        }
+
+        @Override
+        public CompletableFuture<List<MastodonPost>> getOlderAsync(String tag, String maxId, int limit) {
+            return CompletableFuture.completedFuture(getOlder(tag, maxId, limit));
+        }
+    }
+}
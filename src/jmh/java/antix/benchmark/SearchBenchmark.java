@@ -0,0 +1,78 @@
+package antix.benchmark;
+
+import antix.model.Account;
+import antix.model.MastodonPost;
+import antix.model.Tag;
+import antix.search.SearchIndex;
+import antix.search.SearchIndexProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code search} command over a {@link SearchIndex} holding 100k posts:
+ * one term, AND of common and rare terms, and phrases.
+ *
+ * Post texts are synthetic, about twenty words drawn from a vocabulary with a
+ * Zipf-like skew, so a few words are in most posts and most words in few.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+    private static final int POSTS = 100_000;
+    private static final int WORDS = 5_000;
+    private static final String[] TAGS = {"java", "kotlin", "vaadin", "spring", "jvm"};
+
+    @Param({"w1", "w1 w2", "w1 w400", "w400 w900", "\"w1 w2\"", "\"w3 w7\" w1"})
+    String query;
+
+    private SearchIndex index;
+
+    @Setup
+    public void setUp() {
+        index = new SearchIndex(new SearchIndexProperties(POSTS, 200));
+        var random = new Random(42);
+        for (int i = 0; i < POSTS; i++) {
+            var text = new StringBuilder();
+            int length = 10 + random.nextInt(20);
+            for (int j = 0; j < length; j++) {
+                // Rank r is drawn with probability about 1/r
+                int rank = (int) Math.exp(random.nextDouble() * Math.log(WORDS));
+                text.append('w').append(rank).append(' ');
+            }
+            var post = new MastodonPost();
+            post.setId(String.valueOf(i));
+            post.setCreatedAtMillis(1_700_000_000_000L + i * 30_000L);
+            post.setFavouritesCount((int) Math.min(100_000, Math.exp(random.nextDouble() * 8) - 1));
+            post.setPlainText(text.toString());
+            var tag = new Tag();
+            tag.setName(TAGS[random.nextInt(TAGS.length)]);
+            post.setTags(List.of(tag));
+            var account = new Account();
+            account.setUsername("user" + random.nextInt(2_000));
+            post.setAccount(account);
+            index.onIngest(post);
+        }
+    }
+
+    @Benchmark
+    public SearchIndex.Result search() {
+        return index.search(query);
+    }
+}
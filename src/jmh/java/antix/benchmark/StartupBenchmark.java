@@ -0,0 +1,233 @@
+package antix.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of the packaged application, as the {@code production} build
+ * runs it and with each step of the {@code fast-startup} profile added: the
+ * CDS archive, AOT-processed beans, then lazy initialization.
+ *
+ * Every run starts a fresh JVM and measures, from the process start, the time
+ * until {@code /} is served, then until a {@link UiClient} has opened the main
+ * view (which creates the beans it needs, so lazy initialization moves time
+ * from the first to the second), then the resident set size. Modes take turns
+ * so that they share the same noise.
+ *
+ * Needs {@code mvn clean package -Pproduction,fast-startup} first. Not a JMH
+ * benchmark: {@code mvn -Pbenchmark test-compile exec:exec@startup}, options
+ * with {@code -Dstartup.args="--runs 10"}. Arguments after {@code --} are
+ * passed to the application in every mode (a datasource, for instance).
+ */
+public final class StartupBenchmark {
+    private static final Map<String, String> DEFAULTS = Map.of(
+            "runs", "5",
+            "jar", "target/antix-2025.jar",
+            "directory", "target/fast-startup",
+            "modes", "production,cds,cds-aot,fast-startup",
+            "port", "18081",
+            "timeout", "180",
+            "result", "target/benchmark/startup-result.json");
+    private static final Duration POLL = Duration.ofMillis(10);
+
+    private final Map<String, String> options;
+    private final List<String> appArgs;
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private StartupBenchmark(Map<String, String> options, List<String> appArgs) {
+        this.options = options;
+        this.appArgs = appArgs;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var options = new LinkedHashMap<>(DEFAULTS);
+        int i = 0;
+        for (; i + 1 < args.length && !args[i].equals("--"); i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        var appArgs = i < args.length && args[i].equals("--")
+                ? List.of(args).subList(i + 1, args.length)
+                : List.<String>of();
+        new StartupBenchmark(options, appArgs).run();
+    }
+
+    private void run() throws Exception {
+        var modes = options.get("modes").split(",");
+        var samples = new LinkedHashMap<String, List<Sample>>();
+        for (var mode : modes) {
+            command(mode);
+            samples.put(mode, new ArrayList<>());
+        }
+        int runs = Integer.parseInt(options.get("runs"));
+        for (int run = 0; run < runs; run++) {
+            for (var mode : modes) {
+                var sample = start(mode);
+                samples.get(mode).add(sample);
+                System.out.printf("%-14s run %d: first page %6.0f ms, first view %6.0f ms, RSS %4d MiB%n", mode,
+                        run + 1, sample.firstPageMillis(), sample.firstViewMillis(), sample.rssBytes() >> 20);
+            }
+        }
+        report(samples);
+    }
+
+    /**
+     * The command line of {@code mode}, checking that what it starts was
+     * built.
+     */
+    private List<String> command(String mode) {
+        var jar = Path.of(options.get("jar"));
+        var directory = Path.of(options.get("directory"));
+        var command = new ArrayList<String>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (!mode.equals("production")) {
+            var archive = directory.resolve("application.jsa");
+            if (!Files.isRegularFile(archive)) {
+                throw new IllegalStateException(archive + " is missing: build with -Pproduction,fast-startup");
+            }
+            command.add("-XX:SharedArchiveFile=" + archive.toAbsolutePath());
+            jar = directory.resolve(jar.getFileName());
+        }
+        switch (mode) {
+            case "production", "cds" -> {
+            }
+            case "cds-aot" -> command.add("-Dspring.aot.enabled=true");
+            case "fast-startup" -> {
+                command.add("-Dspring.aot.enabled=true");
+                command.add("-Dspring.main.lazy-initialization=true");
+            }
+            default -> throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+        if (!Files.isRegularFile(jar)) {
+            throw new IllegalStateException(jar + " is missing: build with -Pproduction,fast-startup");
+        }
+        command.add("-jar");
+        command.add(jar.toAbsolutePath().toString());
+        command.add("--server.port=" + options.get("port"));
+        command.addAll(appArgs);
+        return command;
+    }
+
+    private Sample start(String mode) throws IOException, InterruptedException {
+        var base = URI.create("http://localhost:" + options.get("port"));
+        var log = Files.createTempFile("antix-startup-" + mode, ".log");
+        long started = System.nanoTime();
+        var process = new ProcessBuilder(command(mode))
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        try {
+            long deadline = started + TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("timeout")));
+            waitFor(process, base.resolve("/"), deadline, log);
+            long firstPage = System.nanoTime() - started;
+            try {
+                new UiClient(http, base, mapper).open();
+            } catch (IOException e) {
+                throw new IOException("Opening the view failed: " + e.getMessage() + "\n" + Files.readString(log), e);
+            }
+            long firstView = System.nanoTime() - started;
+            return new Sample(firstPage / 1e6, firstView / 1e6, rss(process.pid()));
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+            Files.deleteIfExists(log);
+        }
+    }
+
+    private void waitFor(Process process, URI uri, long deadline, Path log) throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).GET().build();
+        while (true) {
+            if (!process.isAlive()) {
+                throw new IOException("The application exited with " + process.exitValue() + ":\n"
+                        + Files.readString(log));
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IOException("No response from " + uri + " in time:\n" + Files.readString(log));
+            }
+            try {
+                int status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                if (status != 200) {
+                    throw new IOException("HTTP " + status + " on " + uri + ":\n" + Files.readString(log));
+                }
+                return;
+            } catch (ConnectException e) {
+                // Not listening yet
+            }
+            Thread.sleep(POLL);
+        }
+    }
+
+    /**
+     * Resident set size of {@code pid}, or -1 where {@code /proc} can't tell.
+     */
+    private static long rss(long pid) throws IOException {
+        var status = Path.of("/proc", String.valueOf(pid), "status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        for (var line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) {
+                // "VmRSS:    123456 kB"
+                return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+            }
+        }
+        return -1;
+    }
+
+    private void report(Map<String, List<Sample>> samples) throws IOException {
+        System.out.printf("%n%-14s %15s %15s %10s%n", "mode", "first page ms", "first view ms", "RSS MiB");
+        var modes = new LinkedHashMap<String, Object>();
+        samples.forEach((mode, runs) -> {
+            double firstPage = median(runs.stream().mapToDouble(Sample::firstPageMillis).toArray());
+            double firstView = median(runs.stream().mapToDouble(Sample::firstViewMillis).toArray());
+            double rss = median(runs.stream().mapToDouble(Sample::rssBytes).toArray());
+            System.out.printf("%-14s %15.0f %15.0f %10.0f%n", mode, firstPage, firstView, rss / (1 << 20));
+            modes.put(mode, Map.of(
+                    "firstPageMillis", firstPage,
+                    "firstViewMillis", firstView,
+                    "rssBytes", (long) rss,
+                    "runs", runs));
+        });
+        System.out.println("Medians of " + options.get("runs") + " runs");
+
+        var result = new LinkedHashMap<String, Object>();
+        result.put("options", options);
+        result.put("appArgs", appArgs);
+        result.put("java", Runtime.version().toString());
+        result.put("modes", modes);
+        var path = Path.of(options.get("result"));
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(path.toFile(), result);
+        System.out.println("Written to " + path);
+    }
+
+    private static double median(double[] values) {
+        Arrays.sort(values);
+        int middle = values.length / 2;
+        return values.length % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+    }
+
+    private record Sample(double firstPageMillis, double firstViewMillis, long rssBytes) {
+    }
+}
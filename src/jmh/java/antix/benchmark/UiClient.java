@@ -0,0 +1,196 @@
+package antix.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+/**
+ * One browser tab on {@code MainView}, as far as the server can tell: the
+ * requests the Vaadin client engine sends to bootstrap a UI, navigate to the
+ * view, type in the prompt and scroll the grid, without rendering anything.
+ *
+ * Only what the scripts need is tracked from the responses: the sync ids and
+ * the nodes of the prompt and the grid. No push connection is opened, so
+ * changes made in the background (replies arriving) come with the next
+ * response, as with a browser on long polling.
+ */
+final class UiClient {
+    private static final String UIDL_PREFIX = "for(;;);";
+    private static final int PAGE_SIZE = 50;
+
+    private final HttpClient http;
+    private final URI base;
+    private final ObjectMapper mapper;
+    private String cookie;
+    private int uiId;
+    private String csrfToken;
+    private int syncId;
+    private int clientId;
+    private int promptNode = -1;
+    private int gridNode = -1;
+    private int line;
+    private int viewportStart;
+    private long responseBytes;
+
+    UiClient(HttpClient http, URI base, ObjectMapper mapper) {
+        this.http = http;
+        this.base = base;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Bootstraps a UI, navigates to the main view and asks for the first page
+     * of the grid, as a page load does.
+     */
+    void open() throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(base.resolve("/?v-r=init&location=&query=")).GET().build();
+        var response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode() + " on init");
+        }
+        responseBytes += response.body().length();
+        cookie = response.headers().firstValue("Set-Cookie")
+                .map(value -> value.substring(0, value.indexOf(';')))
+                .orElseThrow(() -> new IOException("No session cookie"));
+        var config = mapper.readTree(response.body()).get("appConfig");
+        uiId = config.get("v-uiId").asInt();
+        var uidl = config.get("uidl");
+        csrfToken = uidl.get("Vaadin-Security-Key").asText();
+        read(uidl);
+
+        var navigation = mapper.createObjectNode()
+                .put("route", "")
+                .put("query", "")
+                .put("appShellTitle", "")
+                .put("trigger", "");
+        navigation.putObject("historyState").put("idx", 0);
+        rpc(event(1, "ui-navigate").set("data", navigation));
+        if (promptNode < 0 || gridNode < 0) {
+            throw new IOException("The main view wasn't rendered");
+        }
+        requestRange(0);
+    }
+
+    /**
+     * Types {@code text} in the prompt and validates it, then scrolls the grid
+     * to the selected line if it left the rows the browser holds.
+     */
+    void command(String text) throws IOException, InterruptedException {
+        var sync = mapper.createObjectNode()
+                .put("type", "mSync")
+                .put("node", promptNode)
+                .put("feature", 1)
+                .put("property", "value")
+                .put("value", text);
+        rpc(sync, event(promptNode, "change").set("data", mapper.createObjectNode()));
+        if (text.startsWith("h ") || text.startsWith("hashtag ")) {
+            line = 0;
+        } else if (text.equals("n") || text.equals("next")) {
+            line++;
+        } else if ((text.equals("p") || text.equals("previous")) && line > 0) {
+            line--;
+        }
+    }
+
+    /**
+     * Whether the selected line is outside the rows last asked for, in which
+     * case the browser would ask for the page around it.
+     */
+    boolean needsScroll() {
+        return line < viewportStart || line >= viewportStart + PAGE_SIZE;
+    }
+
+    void scroll() throws IOException, InterruptedException {
+        requestRange(Math.max(0, line - PAGE_SIZE / 2));
+    }
+
+    /**
+     * Scrolls the grid down through its first {@code rows} rows, one page of
+     * rows asked for at a time, as dragging the scroll bar would.
+     */
+    void scrollThrough(int rows) throws IOException, InterruptedException {
+        for (int start = 0; start < rows; start += PAGE_SIZE) {
+            requestRange(start);
+        }
+    }
+
+    long responseBytes() {
+        return responseBytes;
+    }
+
+    private void requestRange(int start) throws IOException, InterruptedException {
+        viewportStart = start;
+        var call = mapper.createObjectNode()
+                .put("type", "publishedEventHandler")
+                .put("node", gridNode)
+                .put("templateEventMethodName", "setRequestedRange")
+                .put("promise", 0);
+        call.putArray("templateEventMethodArgs").add(start).add(PAGE_SIZE);
+        rpc(call);
+    }
+
+    private ObjectNode event(int node, String name) {
+        return mapper.createObjectNode()
+                .put("type", "event")
+                .put("node", node)
+                .put("event", name);
+    }
+
+    private void rpc(ObjectNode... invocations) throws IOException, InterruptedException {
+        var message = mapper.createObjectNode()
+                .put("csrfToken", csrfToken)
+                .put("syncId", syncId)
+                .put("clientId", clientId);
+        var calls = message.putArray("rpc");
+        for (var invocation : invocations) {
+            calls.add(invocation);
+        }
+        var request = HttpRequest.newBuilder(base.resolve("/?v-r=uidl&v-uiId=" + uiId))
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .header("Cookie", cookie)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(message)))
+                .build();
+        var response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode() + " on UIDL request");
+        }
+        String body = response.body();
+        responseBytes += body.length();
+        if (!body.startsWith(UIDL_PREFIX)) {
+            throw new IOException("Not a UIDL response");
+        }
+        read(mapper.readTree(body.substring(UIDL_PREFIX.length())).get(0));
+    }
+
+    private void read(JsonNode uidl) throws IOException {
+        var error = uidl.path("meta").path("appError");
+        if (!error.isMissingNode()) {
+            // The message was still processed: the UI goes on, as in the browser
+            // once the notification is dismissed
+            clientId++;
+            throw new IOException("Server error: " + error.path("caption").asText());
+        }
+        if (uidl.path("meta").path("sessionExpired").asBoolean()) {
+            throw new IOException("Session expired");
+        }
+        syncId = uidl.path("syncId").asInt(syncId);
+        clientId = uidl.path("clientId").asInt(clientId);
+        for (var change : uidl.path("changes")) {
+            if (!"tag".equals(change.path("key").asText())) {
+                continue;
+            }
+            switch (change.path("value").asText()) {
+                case "vaadin-text-field" -> promptNode = promptNode < 0 ? change.get("node").asInt() : promptNode;
+                case "vaadin-grid" -> gridNode = gridNode < 0 ? change.get("node").asInt() : gridNode;
+                default -> {
+                }
+            }
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package antix;
 
+import antix.service.FollowedTags;
 import com.vaadin.flow.component.page.AppShellConfigurator;
+import com.vaadin.flow.component.page.Push;
 import com.vaadin.flow.theme.Theme;
 import com.vaadin.flow.theme.lumo.Lumo;
+import org.springframework.boot.LazyInitializationExcludeFilter;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.context.annotation.Bean;
 
 /**
  * The entry point of the Spring Boot application.
@@ -14,10 +19,21 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  *
  */
 @SpringBootApplication
+@ConfigurationPropertiesScan
 @Theme(value = "antix", variant = Lumo.DARK)
+@Push
 public class Application implements AppShellConfigurator {
 
     public static void main(String[] args) {
         SpringApplication.run(Application.class, args);
     }
+
+    /**
+     * Followed hashtags start refreshing at startup even with lazy
+     * initialization, so that they are warm before the first view opens.
+     */
+    @Bean
+    static LazyInitializationExcludeFilter followedTagsEagerly() {
+        return LazyInitializationExcludeFilter.forBeanTypes(FollowedTags.class);
+    }
 }
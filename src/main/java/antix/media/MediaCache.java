@@ -0,0 +1,361 @@
+package antix.media;
+
+import antix.model.MediaAttachment;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Disk cache of media thumbnails ({@code preview_url}), downloaded the first
+ * time a browser asks for one and served from disk afterwards by
+ * {@link MediaController}.
+ *
+ * Thumbnails are addressed by a key derived from their URL, and only URLs of
+ * attachments this server has shown can be fetched, so the proxy can't be
+ * used to reach arbitrary hosts. Files are named after the key and their
+ * type; once the directory holds more than {@code maxBytes} the least
+ * recently used ones are evicted. An evicted file is only deleted
+ * {@link #DELETE_DELAY} later, as a response may still be about to send it.
+ * Recency is kept in memory and in modification times, from which it is
+ * rebuilt on startup. Concurrent requests for the same thumbnail share one
+ * download.
+ */
+@Slf4j
+@Service
+public class MediaCache {
+    private static final Map<String, String> EXTENSIONS = Map.of(
+            "image/jpeg", "jpg",
+            "image/png", "png",
+            "image/webp", "webp",
+            "image/gif", "gif",
+            "image/avif", "avif");
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "jpg", "image/jpeg",
+            "png", "image/png",
+            "webp", "image/webp",
+            "gif", "image/gif",
+            "avif", "image/avif");
+    private static final int KEY_BYTES = 16;
+    // Long enough for a response that got a thumbnail to have opened its file
+    private static final Duration DELETE_DELAY = Duration.ofMinutes(1);
+
+    private final MediaProperties properties;
+    private final HttpClient httpClient;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // Key -> URL of the thumbnails that may be asked for
+    private final Map<String, String> known;
+    // Key -> file on disk, least recently used first
+    private final LinkedHashMap<String, Thumbnail> files = new LinkedHashMap<>(16, 0.75f, true);
+    // Evicted files -> when they were evicted, oldest first; guarded by files
+    private final LinkedHashMap<Path, Long> evicted = new LinkedHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<Thumbnail>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long bytes;
+
+    public MediaCache(MediaProperties properties) {
+        this.properties = properties;
+        this.httpClient = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(properties.fetchTimeout())
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.known = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > properties.maxKnownUrls();
+            }
+        };
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        Files.createDirectories(properties.directory());
+        List<Path> existing;
+        try (Stream<Path> listing = Files.list(properties.directory())) {
+            existing = listing.filter(Files::isRegularFile).toList();
+        }
+        var byAge = existing.stream()
+                .sorted(Comparator.comparing(MediaCache::lastModified))
+                .toList();
+        synchronized (files) {
+            for (var path : byAge) {
+                String name = path.getFileName().toString();
+                String key = StringUtils.substringBefore(name, ".");
+                String contentType = CONTENT_TYPES.get(StringUtils.substringAfter(name, "."));
+                if (contentType == null) {
+                    // Leftover of an interrupted download
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                long size = Files.size(path);
+                files.put(key, new Thumbnail(path, contentType, size));
+                bytes += size;
+            }
+            evict();
+            // Nothing is being served yet
+            deleteEvicted(Duration.ZERO);
+        }
+        log.info("Media cache: {} thumbnails, {} KiB in {}", files.size(), bytes / 1024, properties.directory());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        synchronized (files) {
+            deleteEvicted(Duration.ZERO);
+        }
+    }
+
+    /**
+     * Address at which {@link MediaController} serves the thumbnail of
+     * {@code attachment}, or null when it has none.
+     */
+    public String thumbnailPath(MediaAttachment attachment) {
+        String url = attachment.getPreviewUrl();
+        if (StringUtils.isEmpty(url)) {
+            return null;
+        }
+        String key = key(url);
+        synchronized (known) {
+            known.put(key, url);
+        }
+        return MediaController.THUMBNAILS + key;
+    }
+
+    /**
+     * The thumbnail of {@code key}, downloaded first when it isn't on disk;
+     * null when the key isn't one of a shown attachment.
+     */
+    public Thumbnail get(String key) throws IOException {
+        Thumbnail cached;
+        synchronized (files) {
+            cached = files.get(key);
+        }
+        if (cached != null) {
+            hits.increment();
+            touch(cached.path());
+            return cached;
+        }
+        String url;
+        synchronized (known) {
+            url = known.get(key);
+        }
+        if (url == null) {
+            return null;
+        }
+        misses.increment();
+
+        var mine = new CompletableFuture<Thumbnail>();
+        var existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            var thumbnail = download(key, url);
+            mine.complete(thumbnail);
+            return thumbnail;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public Stats stats() {
+        synchronized (files) {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), files.size(), bytes);
+        }
+    }
+
+    private Thumbnail download(String key, String url) throws IOException {
+        var request = HttpRequest.newBuilder(URI.create(url))
+                .header("Accept", "image/*")
+                .timeout(properties.fetchTimeout())
+                .GET()
+                .build();
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        }
+        try (InputStream body = response.body()) {
+            if (response.statusCode() / 100 != 2) {
+                throw new IOException("HTTP " + response.statusCode() + " from " + url);
+            }
+            String contentType = response.headers().firstValue("Content-Type")
+                    .map(value -> StringUtils.substringBefore(value, ";").trim().toLowerCase(Locale.ROOT))
+                    .orElse("");
+            String extension = EXTENSIONS.get(contentType);
+            if (extension == null) {
+                throw new IOException("Not an image (" + contentType + "): " + url);
+            }
+            long maxFileBytes = properties.maxFileBytes().toBytes();
+            if (response.headers().firstValueAsLong("Content-Length").orElse(0) > maxFileBytes) {
+                throw new IOException("Thumbnail too large: " + url);
+            }
+            var temporary = Files.createTempFile(properties.directory(), key, ".part");
+            try {
+                long size = copy(body, temporary, maxFileBytes, url);
+                var path = properties.directory().resolve(key + "." + extension);
+                var thumbnail = new Thumbnail(path, contentType, size);
+                synchronized (files) {
+                    // Not to be deleted under the new file if it was evicted
+                    evicted.remove(path);
+                    Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    var previous = files.put(key, thumbnail);
+                    bytes += size - (previous == null ? 0 : previous.size());
+                    evict();
+                }
+                return thumbnail;
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    private static long copy(InputStream in, Path target, long max, String url) throws IOException {
+        long size = 0;
+        var buffer = new byte[16 * 1024];
+        try (OutputStream out = Files.newOutputStream(target)) {
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                size += count;
+                if (size > max) {
+                    throw new IOException("Thumbnail too large: " + url);
+                }
+                out.write(buffer, 0, count);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Evicts the least recently used thumbnails until the cache fits, always
+     * keeping the newest one, and deletes the files evicted more than
+     * {@link #DELETE_DELAY} ago. Called holding the lock on {@link #files}.
+     */
+    private void evict() {
+        long now = System.nanoTime();
+        long max = properties.maxBytes().toBytes();
+        var iterator = files.entrySet().iterator();
+        while (bytes > max && files.size() > 1 && iterator.hasNext()) {
+            var eldest = iterator.next().getValue();
+            iterator.remove();
+            bytes -= eldest.size();
+            evictions.increment();
+            evicted.put(eldest.path(), now);
+        }
+        deleteEvicted(DELETE_DELAY);
+    }
+
+    /**
+     * Deletes the files evicted at least {@code age} ago. Called holding the
+     * lock on {@link #files}.
+     */
+    private void deleteEvicted(Duration age) {
+        long before = System.nanoTime() - age.toNanos();
+        var iterator = evicted.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var eldest = iterator.next();
+            if (eldest.getValue() - before > 0) {
+                break;
+            }
+            iterator.remove();
+            try {
+                Files.deleteIfExists(eldest.getKey());
+            } catch (IOException e) {
+                log.warn("Could not delete {}", eldest.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Marks a thumbnail as just used on disk, so that a restart rebuilds the
+     * same least recently used order.
+     */
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            log.debug("Could not touch {}: {}", path, e.getMessage());
+        }
+    }
+
+    static String key(String url) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, KEY_BYTES);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static Thumbnail await(CompletableFuture<Thumbnail> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for thumbnail");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public record Thumbnail(Path path, String contentType, long size) {
+    }
+
+    public record Stats(long hits, long misses, long evictions, int files, long bytes) {
+    }
+}
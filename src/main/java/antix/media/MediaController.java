@@ -0,0 +1,92 @@
+package antix.media;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Pattern;
+
+/**
+ * Serves media thumbnails from the {@link MediaCache}, so that browsers never
+ * fetch them from remote hosts.
+ *
+ * The content behind a key never changes: responses may be kept for
+ * {@code maxAge} and revalidate with the key as ETag. The file is handed to
+ * Tomcat's sendfile when the connector supports it, and otherwise copied with
+ * {@link FileChannel#transferTo}; either way it is never read into the heap.
+ */
+@Slf4j
+@RestController
+public class MediaController {
+    static final String THUMBNAILS = "/media/thumbnails/";
+    private static final Pattern KEY = Pattern.compile("[0-9a-f]{32}");
+    // Request attributes of Tomcat's sendfile support (org.apache.catalina.Globals)
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final MediaCache mediaCache;
+    private final MediaProperties properties;
+
+    public MediaController(MediaCache mediaCache, MediaProperties properties) {
+        this.mediaCache = mediaCache;
+        this.properties = properties;
+    }
+
+    @GetMapping(THUMBNAILS + "{key}")
+    public void thumbnail(@PathVariable String key, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        if (!KEY.matcher(key).matches()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String etag = '"' + key + '"';
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            cacheHeaders(response, etag);
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        MediaCache.Thumbnail thumbnail;
+        try {
+            thumbnail = mediaCache.get(key);
+        } catch (IOException e) {
+            log.debug("Thumbnail {} unavailable: {}", key, e.getMessage());
+            response.sendError(HttpServletResponse.SC_BAD_GATEWAY);
+            return;
+        }
+        if (thumbnail == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        cacheHeaders(response, etag);
+        response.setContentType(thumbnail.contentType());
+        response.setContentLengthLong(thumbnail.size());
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, thumbnail.path().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, thumbnail.size());
+            return;
+        }
+        try (var file = FileChannel.open(thumbnail.path(), StandardOpenOption.READ)) {
+            var out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < thumbnail.size()) {
+                position += file.transferTo(position, thumbnail.size() - position, out);
+            }
+        }
+    }
+
+    private void cacheHeaders(HttpServletResponse response, String etag) {
+        response.setHeader("Cache-Control", "public, max-age=" + properties.maxAge().toSeconds() + ", immutable");
+        response.setHeader("ETag", etag);
+    }
+}
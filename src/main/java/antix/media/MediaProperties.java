@@ -0,0 +1,25 @@
+package antix.media;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings of the media thumbnail proxy and its disk cache, bound from
+ * {@code antix.media.*} in application.yaml.
+ *
+ * {@code maxBytes} bounds the cache directory, {@code maxFileBytes} a single
+ * thumbnail; {@code maxAge} is what browsers are told they may keep one.
+ */
+@ConfigurationProperties("antix.media")
+public record MediaProperties(
+        @DefaultValue("data/media") Path directory,
+        @DefaultValue("512MB") DataSize maxBytes,
+        @DefaultValue("4MB") DataSize maxFileBytes,
+        @DefaultValue("20000") int maxKnownUrls,
+        @DefaultValue("10s") Duration fetchTimeout,
+        @DefaultValue("365d") Duration maxAge) {
+}
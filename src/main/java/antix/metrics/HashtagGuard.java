@@ -0,0 +1,41 @@
+package antix.metrics;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caps the number of distinct values of the {@code hashtag} metric tag, since
+ * hashtags come from what users type.
+ */
+public class HashtagGuard {
+    public static final String TAG = "hashtag";
+    public static final String OTHER = "other";
+
+    private final int max;
+    private final Set<String> admitted = ConcurrentHashMap.newKeySet();
+
+    public HashtagGuard(int max) {
+        this.max = max;
+    }
+
+    /**
+     * The value to report for {@code hashtag}: itself, lowercased, while
+     * fewer than {@code max} hashtags have been seen, {@link #OTHER} after.
+     */
+    public String apply(String hashtag) {
+        String value = hashtag.toLowerCase(Locale.ROOT);
+        if (admitted.contains(value)) {
+            return value;
+        }
+        // May let a few more in under contention, which is fine for a guard
+        if (admitted.size() < max && admitted.add(value)) {
+            return value;
+        }
+        return admitted.contains(value) ? value : OTHER;
+    }
+
+    public int size() {
+        return admitted.size();
+    }
+}
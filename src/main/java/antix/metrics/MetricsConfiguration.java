@@ -0,0 +1,125 @@
+package antix.metrics;
+
+import antix.media.MediaCache;
+import antix.search.FilterIndex;
+import antix.search.SearchIndex;
+import antix.service.FollowedTags;
+import antix.service.TimelineCache;
+import antix.service.UpstreamScheduler;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Hashtag cardinality guard, and the statistics the caches, the search and
+ * filter indexes, the upstream scheduler and the followed tags already keep,
+ * published as metrics.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public HashtagGuard hashtagGuard(MetricsProperties properties) {
+        return new HashtagGuard(properties.maxHashtags());
+    }
+
+    @Bean
+    public MeterFilter hashtagCardinalityFilter(HashtagGuard guard) {
+        return MeterFilter.replaceTagValues(HashtagGuard.TAG, guard::apply);
+    }
+
+    @Bean
+    public MeterBinder timelineCacheMetrics(TimelineCache timelineCache) {
+        return registry -> {
+            FunctionCounter.builder("antix.timeline.cache.hits", timelineCache, cache -> cache.stats().hits())
+                    .register(registry);
+            FunctionCounter.builder("antix.timeline.cache.misses", timelineCache, cache -> cache.stats().misses())
+                    .register(registry);
+            FunctionCounter.builder("antix.timeline.cache.evictions", timelineCache,
+                    cache -> cache.stats().evictions()).register(registry);
+            Gauge.builder("antix.timeline.cache.size", timelineCache, cache -> cache.stats().size())
+                    .description("Hashtags cached")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder searchIndexMetrics(SearchIndex searchIndex) {
+        return registry -> {
+            Gauge.builder("antix.search.posts", searchIndex, index -> index.stats().posts())
+                    .register(registry);
+            Gauge.builder("antix.search.terms", searchIndex, index -> index.stats().terms())
+                    .register(registry);
+            Gauge.builder("antix.search.size", searchIndex, index -> index.stats().bytes())
+                    .baseUnit("bytes")
+                    .description("Estimated size of the index, posts excluded")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder filterIndexMetrics(FilterIndex filterIndex) {
+        return registry -> {
+            Gauge.builder("antix.filter.bitmaps", filterIndex, index -> index.stats().bitmaps())
+                    .register(registry);
+            Gauge.builder("antix.filter.size", filterIndex, index -> index.stats().bytes())
+                    .baseUnit("bytes")
+                    .description("Estimated size of the filter bitmaps, posts excluded")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder upstreamSchedulerMetrics(UpstreamScheduler scheduler) {
+        return registry -> {
+            for (var priority : UpstreamScheduler.Priority.values()) {
+                Gauge.builder("antix.upstream.scheduler.queue", scheduler, upstream -> upstream.queued(priority))
+                        .description("Requests waiting for the rate limit")
+                        .tag("priority", priority.tag())
+                        .register(registry);
+            }
+            Gauge.builder("antix.upstream.rate.remaining", scheduler, UpstreamScheduler::remaining)
+                    .description("Upstream requests left before the rate limit resets")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder followedTagsMetrics(FollowedTags followedTags) {
+        return registry -> {
+            for (var tag : followedTags.tags()) {
+                Gauge.builder("antix.followed.staleness", followedTags,
+                                followed -> followed.staleness(tag).map(age -> age.toMillis() / 1e3).orElse(Double.NaN))
+                        .baseUnit("seconds")
+                        .description("Time since the followed hashtag was last loaded")
+                        .tag(HashtagGuard.TAG, tag)
+                        .register(registry);
+                Gauge.builder("antix.followed.interval", followedTags,
+                                followed -> followed.interval(tag).map(interval -> interval.toMillis() / 1e3).orElse(Double.NaN))
+                        .baseUnit("seconds")
+                        .description("Current refresh interval of the followed hashtag")
+                        .tag(HashtagGuard.TAG, tag)
+                        .register(registry);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder mediaCacheMetrics(MediaCache mediaCache) {
+        return registry -> {
+            FunctionCounter.builder("antix.media.cache.hits", mediaCache, cache -> cache.stats().hits())
+                    .register(registry);
+            FunctionCounter.builder("antix.media.cache.misses", mediaCache, cache -> cache.stats().misses())
+                    .register(registry);
+            FunctionCounter.builder("antix.media.cache.evictions", mediaCache, cache -> cache.stats().evictions())
+                    .register(registry);
+            Gauge.builder("antix.media.cache.size", mediaCache, cache -> cache.stats().bytes())
+                    .baseUnit("bytes")
+                    .description("Thumbnails on disk")
+                    .register(registry);
+        };
+    }
+}
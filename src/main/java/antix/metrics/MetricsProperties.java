@@ -0,0 +1,16 @@
+package antix.metrics;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the application metrics, bound from {@code antix.metrics.*} in
+ * application.yaml.
+ *
+ * Only the first {@code max-hashtags} distinct hashtags get their own metric
+ * series; any later one is reported as {@code other}.
+ */
+@ConfigurationProperties("antix.metrics")
+public record MetricsProperties(
+        @DefaultValue("100") int maxHashtags) {
+}
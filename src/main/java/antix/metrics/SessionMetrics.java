@@ -0,0 +1,74 @@
+package antix.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+
+/**
+ * Per-UI metrics: how many views are open, how many posts they keep in
+ * memory, and how long the grid and the replies panel take to fill.
+ */
+@Component
+public class SessionMetrics {
+    private final Set<IntSupplier> views = ConcurrentHashMap.newKeySet();
+    private final Timer gridFetch;
+    private final Timer repliesShown;
+
+    public SessionMetrics(MeterRegistry registry) {
+        Gauge.builder("antix.ui.sessions", views, Set::size)
+                .description("Open main views")
+                .register(registry);
+        Gauge.builder("antix.ui.posts.held", this, metrics -> metrics.heldPosts(false))
+                .description("Posts held in memory by all open views")
+                .register(registry);
+        Gauge.builder("antix.ui.posts.held.max", this, metrics -> metrics.heldPosts(true))
+                .description("Posts held in memory by the largest open view")
+                .register(registry);
+        this.gridFetch = Timer.builder("antix.ui.grid.fetch")
+                .description("Rows requested by the grid, loading included")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
+        this.repliesShown = Timer.builder("antix.ui.replies.shown")
+                .description("Post selected until its replies are displayed")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
+    }
+
+    /**
+     * Counts a view until the returned handle is closed. {@code heldPosts} is
+     * read from the metrics thread.
+     */
+    public AutoCloseable register(IntSupplier heldPosts) {
+        views.add(heldPosts);
+        return () -> views.remove(heldPosts);
+    }
+
+    public Timer gridFetch() {
+        return gridFetch;
+    }
+
+    public Timer repliesShown() {
+        return repliesShown;
+    }
+
+    private double heldPosts(boolean max) {
+        int total = 0;
+        int largest = 0;
+        for (var view : views) {
+            int held = view.getAsInt();
+            total += held;
+            largest = Math.max(largest, held);
+        }
+        return max ? largest : total;
+    }
+}
@@ -0,0 +1,211 @@
+package antix.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the calls made to the Mastodon API, one {@link Call} per
+ * request.
+ *
+ * A call is split into time to first byte (request sent until the response
+ * headers arrive, including connecting when no pooled connection can be
+ * reused), download (time blocked reading the body) and parse (the rest of
+ * the time spent consuming the body, since responses are parsed as they
+ * stream in). Every call is counted by HTTP status, failures also by cause.
+ * Only the counters carry the hashtag, so that the series count of the
+ * histograms doesn't grow with it.
+ */
+@Component
+public class UpstreamMetrics {
+    private static final Duration MIN_EXPECTED = Duration.ofMillis(1);
+    private static final Duration MAX_EXPECTED = Duration.ofSeconds(30);
+
+    private final MeterRegistry registry;
+    private final DistributionSummary pagePosts;
+    private final DistributionSummary replies;
+
+    public UpstreamMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.pagePosts = DistributionSummary.builder("antix.timeline.page.posts")
+                .description("Posts returned by a hashtag timeline page")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(80.0)
+                .register(registry);
+        this.replies = DistributionSummary.builder("antix.context.replies")
+                .description("Replies returned by a status context")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(1000.0)
+                .register(registry);
+    }
+
+    /**
+     * Starts timing a request to {@code endpoint} (timeline, context,
+     * stream), about {@code hashtag} when there is one.
+     */
+    public Call start(String endpoint, String hashtag) {
+        return new Call(endpoint, hashtag);
+    }
+
+    public void pagePosts(int posts) {
+        pagePosts.record(posts);
+    }
+
+    public void replies(int count) {
+        replies.record(count);
+    }
+
+    /**
+     * A request at {@code priority} waited {@code nanos} for the rate limit
+     * scheduler to let it through, or to give up on it.
+     */
+    public void scheduled(String priority, long nanos) {
+        timer("antix.upstream.scheduler.wait", "Time waiting for the rate limit", Tags.of("priority", priority))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * A request at {@code priority} was not sent for lack of rate limit.
+     */
+    public void shed(String priority) {
+        Counter.builder("antix.upstream.scheduler.shed")
+                .description("Requests not sent for lack of rate limit")
+                .tags("priority", priority)
+                .register(registry)
+                .increment();
+    }
+
+    private Timer timer(String name, String description, Tags tags) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MIN_EXPECTED)
+                .maximumExpectedValue(MAX_EXPECTED)
+                .register(registry);
+    }
+
+    public final class Call {
+        // Histograms are only split by endpoint, counters also by hashtag
+        private final Tags tags;
+        private final Tags countTags;
+        private final long started = System.nanoTime();
+        private long headersAt;
+        private boolean failed;
+
+        private Call(String endpoint, String hashtag) {
+            this.tags = Tags.of("endpoint", endpoint);
+            this.countTags = hashtag == null ? tags : tags.and(HashtagGuard.TAG, hashtag);
+        }
+
+        /**
+         * The response headers arrived with {@code status}.
+         */
+        public void headers(int status) {
+            headersAt = System.nanoTime();
+            timer("antix.upstream.first.byte", "Request sent until response headers received", tags)
+                    .record(headersAt - started, TimeUnit.NANOSECONDS);
+            Counter.builder("antix.upstream.requests")
+                    .description("Upstream requests by HTTP status")
+                    .tags(countTags.and("status", String.valueOf(status)))
+                    .register(registry)
+                    .increment();
+        }
+
+        /**
+         * The request failed before or while reading the body. Only the first
+         * failure of a call is counted.
+         */
+        public void failed(Throwable error) {
+            if (failed) {
+                return;
+            }
+            failed = true;
+            String cause = error instanceof HttpTimeoutException ? "timeout" : error.getClass().getSimpleName();
+            if (headersAt == 0) {
+                Counter.builder("antix.upstream.requests")
+                        .description("Upstream requests by HTTP status")
+                        .tags(countTags.and("status", "none"))
+                        .register(registry)
+                        .increment();
+            }
+            Counter.builder("antix.upstream.errors")
+                    .description("Failed upstream requests by cause")
+                    .tags(countTags.and("cause", cause))
+                    .register(registry)
+                    .increment();
+        }
+
+        /**
+         * Wraps the response body so that reading it is split into download
+         * and parse time, recorded when it is closed.
+         */
+        public InputStream body(InputStream body) {
+            return new TimedInputStream(body);
+        }
+
+        private final class TimedInputStream extends FilterInputStream {
+            private long readNanos;
+            private long bytes;
+            private boolean closed;
+
+            TimedInputStream(InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                long start = System.nanoTime();
+                int value = super.read();
+                readNanos += System.nanoTime() - start;
+                if (value >= 0) {
+                    bytes++;
+                }
+                return value;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                long start = System.nanoTime();
+                int count = super.read(buffer, offset, length);
+                readNanos += System.nanoTime() - start;
+                if (count > 0) {
+                    bytes += count;
+                }
+                return count;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                long consumed = System.nanoTime() - headersAt;
+                timer("antix.upstream.download", "Time blocked reading response bodies", tags)
+                        .record(readNanos, TimeUnit.NANOSECONDS);
+                timer("antix.upstream.parse", "Time parsing response bodies as they stream in", tags)
+                        .record(Math.max(0, consumed - readNanos), TimeUnit.NANOSECONDS);
+                DistributionSummary.builder("antix.upstream.response.size")
+                        .description("Response body size")
+                        .baseUnit("bytes")
+                        .tags(tags)
+                        .register(registry)
+                        .record(bytes);
+                super.close();
+            }
+        }
+    }
+}
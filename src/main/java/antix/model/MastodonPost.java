@@ -1,19 +1,26 @@
 package antix.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.List;
 
 @Data
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class MastodonPost {
+    // Value of createdAtMillis and editedAtMillis when the time is unknown
+    public static final long NO_TIME = Long.MIN_VALUE;
+
     private String id;
 
-    @JsonProperty("created_at")
-    private ZonedDateTime createdAt;
+    // Epoch millis rather than a ZonedDateTime, which takes about 100 bytes
+    @JsonIgnore
+    private long createdAtMillis = NO_TIME;
 
     @JsonProperty("in_reply_to_id")
     private String inReplyToId;
@@ -40,8 +47,8 @@ public class MastodonPost {
     @JsonProperty("favourites_count")
     private int favouritesCount;
 
-    @JsonProperty("edited_at")
-    private ZonedDateTime editedAt;
+    @JsonIgnore
+    private long editedAtMillis = NO_TIME;
 
     private boolean favourited;
     private boolean reblogged;
@@ -66,4 +73,46 @@ public class MastodonPost {
     private List<Mention> mentions;
     private Application application;
     private Card card;
+
+    // Derived from content once at ingest, see PostIngest
+    @JsonIgnore
+    private String plainText;
+
+    @JsonIgnore
+    private String preview;
+
+    @JsonIgnore
+    private String safeHtml;
+
+    // Whether the status had a link card, which is dropped at ingest
+    @JsonIgnore
+    private boolean hasCard;
+
+    @JsonProperty("created_at")
+    public ZonedDateTime getCreatedAt() {
+        return toTime(createdAtMillis);
+    }
+
+    @JsonProperty("created_at")
+    public void setCreatedAt(ZonedDateTime createdAt) {
+        this.createdAtMillis = toMillis(createdAt);
+    }
+
+    @JsonProperty("edited_at")
+    public ZonedDateTime getEditedAt() {
+        return toTime(editedAtMillis);
+    }
+
+    @JsonProperty("edited_at")
+    public void setEditedAt(ZonedDateTime editedAt) {
+        this.editedAtMillis = toMillis(editedAt);
+    }
+
+    private static ZonedDateTime toTime(long millis) {
+        return millis == NO_TIME ? null : Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC);
+    }
+
+    private static long toMillis(ZonedDateTime time) {
+        return time == null ? NO_TIME : time.toInstant().toEpochMilli();
+    }
 }
@@ -0,0 +1,13 @@
+package antix.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class StatusContext {
+    private List<MastodonPost> ancestors;
+    private List<MastodonPost> descendants;
+}
@@ -0,0 +1,486 @@
+package antix.search;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints, in the manner of Roaring bitmaps.
+ *
+ * Values are split on their high 16 bits into chunks of 65,536. A chunk holds
+ * a sorted {@code char[]} while it has at most {@link #ARRAY_MAX} values and a
+ * 1,024-word bitmap beyond, so sparse and dense sets both stay small and AND,
+ * OR and AND NOT work a chunk, and mostly a word, at a time.
+ *
+ * Operations return new bitmaps that share nothing with their operands. Not
+ * thread-safe.
+ */
+final class Bitmap {
+    static final int ARRAY_MAX = 4096;
+
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    Bitmap() {
+        this(4);
+    }
+
+    private Bitmap(int capacity) {
+        keys = new char[Math.max(1, capacity)];
+        containers = new Container[keys.length];
+    }
+
+    void add(int value) {
+        char key = (char) (value >>> 16);
+        int i = indexOf(key);
+        if (i >= 0) {
+            containers[i] = containers[i].add((char) value);
+        } else {
+            insert(-i - 1, key, new ArrayContainer().add((char) value));
+        }
+    }
+
+    void remove(int value) {
+        int i = indexOf((char) (value >>> 16));
+        if (i < 0) {
+            return;
+        }
+        var container = containers[i].remove((char) value);
+        if (container.cardinality() == 0) {
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+            containers[--size] = null;
+        } else {
+            containers[i] = container;
+        }
+    }
+
+    boolean contains(int value) {
+        int i = indexOf((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    Bitmap copy() {
+        var copy = new Bitmap(size);
+        for (int i = 0; i < size; i++) {
+            copy.append(keys[i], containers[i].copy());
+        }
+        return copy;
+    }
+
+    static Bitmap and(Bitmap a, Bitmap b) {
+        var result = new Bitmap(Math.min(a.size, b.size));
+        for (int i = 0, j = 0; i < a.size && j < b.size; ) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                result.appendNonEmpty(a.keys[i], a.containers[i++].and(b.containers[j++]));
+            }
+        }
+        return result;
+    }
+
+    static Bitmap or(Bitmap a, Bitmap b) {
+        var result = new Bitmap(a.size + b.size);
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                result.append(a.keys[i], a.containers[i++].copy());
+            } else if (a.keys[i] > b.keys[j]) {
+                result.append(b.keys[j], b.containers[j++].copy());
+            } else {
+                result.append(a.keys[i], a.containers[i++].or(b.containers[j++]));
+            }
+        }
+        for (; i < a.size; i++) {
+            result.append(a.keys[i], a.containers[i].copy());
+        }
+        for (; j < b.size; j++) {
+            result.append(b.keys[j], b.containers[j].copy());
+        }
+        return result;
+    }
+
+    static Bitmap andNot(Bitmap a, Bitmap b) {
+        var result = new Bitmap(a.size);
+        int j = 0;
+        for (int i = 0; i < a.size; i++) {
+            while (j < b.size && b.keys[j] < a.keys[i]) {
+                j++;
+            }
+            if (j < b.size && b.keys[j] == a.keys[i]) {
+                result.appendNonEmpty(a.keys[i], a.containers[i].andNot(b.containers[j]));
+            } else {
+                result.append(a.keys[i], a.containers[i].copy());
+            }
+        }
+        return result;
+    }
+
+    void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    /**
+     * Approximate heap size, for the metrics.
+     */
+    long bytes() {
+        long bytes = 16 + 2L * keys.length + 4L * containers.length;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i].bytes();
+        }
+        return bytes;
+    }
+
+    private int indexOf(char key) {
+        // Values mostly arrive in increasing order: check the last chunk first
+        if (size > 0 && keys[size - 1] == key) {
+            return size - 1;
+        }
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insert(int i, char key, Container container) {
+        ensureCapacity();
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = container;
+        size++;
+    }
+
+    private void append(char key, Container container) {
+        ensureCapacity();
+        keys[size] = key;
+        containers[size++] = container;
+    }
+
+    private void appendNonEmpty(char key, Container container) {
+        if (container.cardinality() > 0) {
+            append(key, container);
+        }
+    }
+
+    private void ensureCapacity() {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+    }
+
+    private abstract static sealed class Container permits ArrayContainer, BitmapContainer {
+        int cardinality;
+
+        int cardinality() {
+            return cardinality;
+        }
+
+        abstract boolean contains(char value);
+
+        /**
+         * Adds {@code value}, returning this container or the one that
+         * replaces it.
+         */
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        abstract Container copy();
+
+        abstract void forEach(int high, IntConsumer action);
+
+        abstract long bytes();
+    }
+
+    private static final class ArrayContainer extends Container {
+        char[] values;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Container add(char value) {
+            // Appending is the common case
+            int i = cardinality > 0 && values[cardinality - 1] < value
+                    ? -cardinality - 1
+                    : Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX) {
+                return toBitmap().add(value);
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        Container and(Container other) {
+            var result = new char[Math.min(cardinality, other.cardinality)];
+            int count = 0;
+            if (other instanceof ArrayContainer array) {
+                for (int i = 0, j = 0; i < cardinality && j < array.cardinality; ) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result[count++] = values[i++];
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer bitmap) {
+                return bitmap.or(this);
+            }
+            var array = (ArrayContainer) other;
+            var result = new char[cardinality + array.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality && j < array.cardinality) {
+                if (values[i] < array.values[j]) {
+                    result[count++] = values[i++];
+                } else if (values[i] > array.values[j]) {
+                    result[count++] = array.values[j++];
+                } else {
+                    result[count++] = values[i++];
+                    j++;
+                }
+            }
+            while (i < cardinality) {
+                result[count++] = values[i++];
+            }
+            while (j < array.cardinality) {
+                result[count++] = array.values[j++];
+            }
+            var union = new ArrayContainer(result, count);
+            return count > ARRAY_MAX ? union.toBitmap() : union;
+        }
+
+        @Override
+        Container andNot(Container other) {
+            var result = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(1, cardinality)), cardinality);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) {
+                action.accept(high | values[i]);
+            }
+        }
+
+        @Override
+        long bytes() {
+            return 16 + 16 + 2L * values.length;
+        }
+
+        BitmapContainer toBitmap() {
+            var bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.words[values[i] >>> 6] |= 1L << values[i];
+            }
+            bitmap.cardinality = cardinality;
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        final long[] words;
+
+        BitmapContainer() {
+            this(new long[1024]);
+        }
+
+        BitmapContainer(long[] words) {
+            this.words = words;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container add(char value) {
+            long word = words[value >>> 6];
+            long bit = 1L << value;
+            if ((word & bit) == 0) {
+                words[value >>> 6] = word | bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long word = words[value >>> 6];
+            long bit = 1L << value;
+            if ((word & bit) != 0) {
+                words[value >>> 6] = word & ~bit;
+                cardinality--;
+            }
+            return cardinality <= ARRAY_MAX ? toArray() : this;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer array) {
+                return array.and(this);
+            }
+            var bitmap = (BitmapContainer) other;
+            var result = new long[1024];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = words[i] & bitmap.words[i];
+            }
+            return fromWords(result);
+        }
+
+        @Override
+        Container or(Container other) {
+            var result = words.clone();
+            if (other instanceof ArrayContainer array) {
+                for (int i = 0; i < array.cardinality; i++) {
+                    result[array.values[i] >>> 6] |= 1L << array.values[i];
+                }
+            } else {
+                var bitmap = (BitmapContainer) other;
+                for (int i = 0; i < result.length; i++) {
+                    result[i] |= bitmap.words[i];
+                }
+            }
+            return fromWords(result);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            var result = words.clone();
+            if (other instanceof ArrayContainer array) {
+                for (int i = 0; i < array.cardinality; i++) {
+                    result[array.values[i] >>> 6] &= ~(1L << array.values[i]);
+                }
+            } else {
+                var bitmap = (BitmapContainer) other;
+                for (int i = 0; i < result.length; i++) {
+                    result[i] &= ~bitmap.words[i];
+                }
+            }
+            return fromWords(result);
+        }
+
+        @Override
+        Container copy() {
+            var copy = new BitmapContainer(words.clone());
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < words.length; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    action.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+                }
+            }
+        }
+
+        @Override
+        long bytes() {
+            return 16 + 16 + 8L * words.length;
+        }
+
+        private ArrayContainer toArray() {
+            var values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    values[count++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+
+        private static Container fromWords(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            var bitmap = new BitmapContainer(words);
+            bitmap.cardinality = cardinality;
+            return cardinality <= ARRAY_MAX ? bitmap.toArray() : bitmap;
+        }
+    }
+}
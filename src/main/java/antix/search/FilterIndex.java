@@ -0,0 +1,409 @@
+package antix.search;
+
+import antix.model.MastodonPost;
+import antix.service.PostIngestListener;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bitmap index over every post the application has seen, to narrow them by
+ * attributes without scanning: language, tags, sensitive, with media, with a
+ * link card, at least so many favourites or boosts.
+ *
+ * Each post gets a document number in arrival order, and each attribute value
+ * a {@link Bitmap} of the documents that have it. Favourite and boost counts
+ * are indexed by powers of two (bucket {@code b} holds the posts with at least
+ * 2<sup>b</sup>), so a threshold is one bucket, plus a check of the posts of
+ * the bucket below when it isn't a power of two.
+ *
+ * A filter is terms separated by spaces, ANDed, in alternatives separated by
+ * {@code |}, ORed: {@code lang:fr,en media -sensitive | fav:50}. Terms are
+ * {@code lang:}, {@code tag:} (comma-separated values are ORed),
+ * {@code fav:}, {@code boost:} (minimum counts), {@code sensitive},
+ * {@code media} and {@code card}; a leading {@code -} negates one.
+ *
+ * Shares {@code max-posts} with the {@link SearchIndex}: beyond it, the index
+ * is rebuilt with the newest three quarters of the posts.
+ */
+@Service
+public class FilterIndex implements PostIngestListener {
+    private static final int BUCKETS = 21;
+    // Bits of the position of a match when sorting results by time
+    private static final int DOC_BITS = 24;
+
+    private final SearchIndexProperties properties;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> docIds = new HashMap<>();
+    private final Map<String, Bitmap> languages = new HashMap<>();
+    private final Map<String, Bitmap> tags = new HashMap<>();
+    private final Bitmap[] favourites = buckets();
+    private final Bitmap[] reblogs = buckets();
+    private Bitmap all = new Bitmap();
+    private Bitmap sensitive = new Bitmap();
+    private Bitmap media = new Bitmap();
+    private Bitmap card = new Bitmap();
+    private MastodonPost[] posts = new MastodonPost[1024];
+    // Read without touching the posts: sort keys and threshold checks
+    private long[] createdAt = new long[1024];
+    private int[] favouriteCounts = new int[1024];
+    private int[] reblogCounts = new int[1024];
+    private int docCount;
+
+    public FilterIndex(SearchIndexProperties properties) {
+        if (properties.maxPosts() >= 1 << DOC_BITS) {
+            throw new IllegalArgumentException("antix.search.max-posts must be below " + (1 << DOC_BITS));
+        }
+        this.properties = properties;
+    }
+
+    @Override
+    public void onIngest(MastodonPost post) {
+        if (post.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Integer existing = docIds.get(post.getId());
+            if (existing != null) {
+                // Counts and flags may have changed
+                unindex(existing, posts[existing]);
+                set(existing, post);
+                index(existing, post);
+                return;
+            }
+            if (docCount >= properties.maxPosts()) {
+                rebuild(properties.maxPosts() * 3 / 4);
+            }
+            add(post);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs {@code filter} over the posts having one of {@code within} tags, or
+     * over all posts when {@code within} is empty.
+     *
+     * @throws IllegalArgumentException if a term isn't understood
+     */
+    public Result filter(String filter, Collection<String> within) {
+        var alternatives = parse(filter);
+        lock.readLock().lock();
+        try {
+            Bitmap result = null;
+            for (var terms : alternatives) {
+                var matches = evaluate(terms);
+                result = result == null ? matches : Bitmap.or(result, matches);
+            }
+            if (!within.isEmpty()) {
+                result = Bitmap.and(result, anyOf(tags, within));
+            }
+            // Copied while locked: the posts and their times may be replaced
+            // by a re-ingest, and the bitmap may be one of the index's own
+            var matched = new MastodonPost[result.cardinality()];
+            var keys = new long[matched.length];
+            int[] count = {0};
+            result.forEach(doc -> {
+                int i = count[0]++;
+                matched[i] = posts[doc];
+                keys[i] = createdAt[doc] / 1000 << DOC_BITS | i;
+            });
+            return new Result(matched, keys);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Stats stats() {
+        lock.readLock().lock();
+        try {
+            long bytes = all.bytes() + sensitive.bytes() + media.bytes() + card.bytes();
+            for (var bitmap : languages.values()) {
+                bytes += bitmap.bytes();
+            }
+            for (var bitmap : tags.values()) {
+                bytes += bitmap.bytes();
+            }
+            for (int b = 0; b < BUCKETS; b++) {
+                bytes += favourites[b].bytes() + reblogs[b].bytes();
+            }
+            int bitmaps = 4 + languages.size() + tags.size() + 2 * BUCKETS;
+            // per document: post reference, createdAt, counts, id map entry
+            bytes += posts.length * (8L + 8 + 4 + 4) + docIds.size() * 48L
+                    + (languages.size() + tags.size()) * 64L;
+            return new Stats(docCount, bitmaps, bytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(MastodonPost post) {
+        int doc = docCount++;
+        if (doc == posts.length) {
+            int capacity = posts.length * 2;
+            posts = Arrays.copyOf(posts, capacity);
+            createdAt = Arrays.copyOf(createdAt, capacity);
+            favouriteCounts = Arrays.copyOf(favouriteCounts, capacity);
+            reblogCounts = Arrays.copyOf(reblogCounts, capacity);
+        }
+        set(doc, post);
+        docIds.put(post.getId(), doc);
+        all.add(doc);
+        index(doc, post);
+    }
+
+    private void set(int doc, MastodonPost post) {
+        posts[doc] = post;
+        createdAt[doc] = post.getCreatedAtMillis() == MastodonPost.NO_TIME ? 0 : post.getCreatedAtMillis();
+        favouriteCounts[doc] = post.getFavouritesCount();
+        reblogCounts[doc] = post.getReblogsCount();
+    }
+
+    private void index(int doc, MastodonPost post) {
+        if (post.isSensitive()) {
+            sensitive.add(doc);
+        }
+        if (post.getMediaAttachments() != null && !post.getMediaAttachments().isEmpty()) {
+            media.add(doc);
+        }
+        if (post.isHasCard()) {
+            card.add(doc);
+        }
+        if (post.getLanguage() != null) {
+            languages.computeIfAbsent(key(post.getLanguage()), key -> new Bitmap()).add(doc);
+        }
+        if (post.getTags() != null) {
+            for (var tag : post.getTags()) {
+                if (tag.getName() != null) {
+                    tags.computeIfAbsent(key(tag.getName()), key -> new Bitmap()).add(doc);
+                }
+            }
+        }
+        for (int b = 0; b < BUCKETS && post.getFavouritesCount() >= 1 << b; b++) {
+            favourites[b].add(doc);
+        }
+        for (int b = 0; b < BUCKETS && post.getReblogsCount() >= 1 << b; b++) {
+            reblogs[b].add(doc);
+        }
+    }
+
+    private void unindex(int doc, MastodonPost post) {
+        sensitive.remove(doc);
+        media.remove(doc);
+        card.remove(doc);
+        if (post.getLanguage() != null) {
+            remove(languages, key(post.getLanguage()), doc);
+        }
+        if (post.getTags() != null) {
+            for (var tag : post.getTags()) {
+                if (tag.getName() != null) {
+                    remove(tags, key(tag.getName()), doc);
+                }
+            }
+        }
+        for (int b = 0; b < BUCKETS; b++) {
+            favourites[b].remove(doc);
+            reblogs[b].remove(doc);
+        }
+    }
+
+    /**
+     * Re-indexes the newest {@code keep} posts from scratch, oldest first so
+     * that document numbers keep following arrival order.
+     */
+    private void rebuild(int keep) {
+        var live = new ArrayList<>(Arrays.asList(posts).subList(0, docCount));
+        live.sort((a, b) -> Long.compare(b.getCreatedAtMillis(), a.getCreatedAtMillis()));
+        var kept = live.subList(0, Math.min(keep, live.size()));
+        docIds.clear();
+        languages.clear();
+        tags.clear();
+        for (int b = 0; b < BUCKETS; b++) {
+            favourites[b] = new Bitmap();
+            reblogs[b] = new Bitmap();
+        }
+        all = new Bitmap();
+        sensitive = new Bitmap();
+        media = new Bitmap();
+        card = new Bitmap();
+        // New arrays: results handed out keep reading the old ones
+        posts = new MastodonPost[Math.max(1024, Integer.highestOneBit(Math.max(1, kept.size())) * 2)];
+        createdAt = new long[posts.length];
+        favouriteCounts = new int[posts.length];
+        reblogCounts = new int[posts.length];
+        docCount = 0;
+        for (int i = kept.size() - 1; i >= 0; i--) {
+            add(kept.get(i));
+        }
+    }
+
+    /**
+     * Documents matching all {@code terms}.
+     */
+    private Bitmap evaluate(List<String> terms) {
+        var included = new ArrayList<Bitmap>();
+        var excluded = new ArrayList<Bitmap>();
+        for (var term : terms) {
+            boolean negated = term.startsWith("-");
+            (negated ? excluded : included).add(bitmap(negated ? term.substring(1) : term));
+        }
+        // Smallest first, so that intersections shrink fast
+        included.sort((a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+        Bitmap result = included.isEmpty() ? all : included.get(0);
+        for (int i = 1; i < included.size(); i++) {
+            result = Bitmap.and(result, included.get(i));
+        }
+        for (var bitmap : excluded) {
+            result = Bitmap.andNot(result, bitmap);
+        }
+        return result;
+    }
+
+    private Bitmap bitmap(String term) {
+        String name = StringUtils.substringBefore(term, ":").toLowerCase(Locale.ROOT);
+        String value = StringUtils.substringAfter(term, ":");
+        return switch (name) {
+            case "sensitive" -> sensitive;
+            case "media" -> media;
+            case "card" -> card;
+            case "lang", "language" -> anyOf(languages, values(term, value));
+            case "tag" -> anyOf(tags, values(term, value));
+            case "fav", "favs", "favourites" ->
+                    atLeast(favourites, favouriteCounts, count(term, value));
+            case "boost", "boosts", "reblogs" -> atLeast(reblogs, reblogCounts, count(term, value));
+            default -> throw new IllegalArgumentException("Unknown filter: " + term);
+        };
+    }
+
+    private Bitmap anyOf(Map<String, Bitmap> bitmaps, Collection<String> values) {
+        Bitmap result = new Bitmap();
+        for (var value : values) {
+            var bitmap = bitmaps.get(key(value));
+            if (bitmap != null) {
+                result = result.isEmpty() ? bitmap : Bitmap.or(result, bitmap);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Documents with a count of at least {@code min}.
+     */
+    private Bitmap atLeast(Bitmap[] buckets, int[] counts, int min) {
+        if (min <= 0) {
+            return all;
+        }
+        int b = Math.min(31 - Integer.numberOfLeadingZeros(min), BUCKETS - 1);
+        if (min == 1 << b) {
+            return buckets[b];
+        }
+        // Between 2^b and the next bucket: the counts decide
+        boolean last = b == BUCKETS - 1;
+        var result = last ? new Bitmap() : buckets[b + 1].copy();
+        var boundary = last ? buckets[b] : Bitmap.andNot(buckets[b], buckets[b + 1]);
+        boundary.forEach(doc -> {
+            if (counts[doc] >= min) {
+                result.add(doc);
+            }
+        });
+        return result;
+    }
+
+    private static List<List<String>> parse(String filter) {
+        var alternatives = new ArrayList<List<String>>();
+        for (var alternative : StringUtils.split(StringUtils.defaultString(filter), '|')) {
+            var terms = List.of(StringUtils.split(alternative));
+            if (!terms.isEmpty()) {
+                alternatives.add(terms);
+            }
+        }
+        if (alternatives.isEmpty()) {
+            alternatives.add(List.of());
+        }
+        return alternatives;
+    }
+
+    private static List<String> values(String term, String value) {
+        var values = StringUtils.split(value, ',');
+        if (values.length == 0) {
+            throw new IllegalArgumentException("No value in filter: " + term);
+        }
+        return List.of(values);
+    }
+
+    private static int count(String term, String value) {
+        if (!StringUtils.isNumeric(value) || value.length() > 9) {
+            throw new IllegalArgumentException("Not a count in filter: " + term);
+        }
+        return Integer.parseInt(value);
+    }
+
+    private static String key(String value) {
+        return StringUtils.removeStart(value, "#").toLowerCase(Locale.ROOT);
+    }
+
+    private static void remove(Map<String, Bitmap> bitmaps, String key, int doc) {
+        var bitmap = bitmaps.get(key);
+        if (bitmap != null) {
+            bitmap.remove(doc);
+            if (bitmap.isEmpty()) {
+                bitmaps.remove(key);
+            }
+        }
+    }
+
+    private static Bitmap[] buckets() {
+        var buckets = new Bitmap[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++) {
+            buckets[b] = new Bitmap();
+        }
+        return buckets;
+    }
+
+    /**
+     * Posts matching a filter, newest first, as they were when filtering.
+     * They are sorted by time on the first fetch only, so that a filter
+     * whose rows aren't shown doesn't pay for it.
+     */
+    public static final class Result {
+        private final MastodonPost[] posts;
+        // Seconds then position in posts, in one long: a primitive sort
+        private final long[] keys;
+        private boolean sorted;
+
+        private Result(MastodonPost[] posts, long[] keys) {
+            this.posts = posts;
+            this.keys = keys;
+        }
+
+        public int matches() {
+            return posts.length;
+        }
+
+        public synchronized List<MastodonPost> fetch(int offset, int limit) {
+            if (!sorted) {
+                Arrays.sort(keys);
+                sorted = true;
+            }
+            int from = Math.min(offset, keys.length);
+            int to = (int) Math.min((long) from + limit, keys.length);
+            var page = new ArrayList<MastodonPost>(to - from);
+            for (int i = from; i < to; i++) {
+                page.add(posts[(int) (keys[keys.length - 1 - i] & ((1 << DOC_BITS) - 1))]);
+            }
+            return page;
+        }
+    }
+
+    public record Stats(int posts, int bitmaps, long bytes) {
+    }
+}
@@ -0,0 +1,46 @@
+package antix.search;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, used for posting lists.
+ */
+final class IntList {
+    private int[] values;
+    private int size;
+
+    IntList() {
+        this(4);
+    }
+
+    IntList(int capacity) {
+        values = new int[Math.max(1, capacity)];
+    }
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1) + 1);
+        }
+        values[size++] = value;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int last() {
+        return values[size - 1];
+    }
+
+    int capacity() {
+        return values.length;
+    }
+
+    int[] raw() {
+        return values;
+    }
+}
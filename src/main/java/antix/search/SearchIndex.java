@@ -0,0 +1,328 @@
+package antix.search;
+
+import antix.model.MastodonPost;
+import antix.service.PostIngestListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over every post the application has seen.
+ *
+ * Each post gets a document number in arrival order, so posting lists are
+ * sorted {@link IntList}s that can be intersected without boxing. The plain
+ * text, spoiler text, tag names and author username are indexed. Queries AND
+ * all their terms; a {@code "quoted phrase"} must also appear as consecutive
+ * terms. Matches are ranked by recency, boosted by favourites.
+ *
+ * When more than {@code max-posts} posts are live, the index is rebuilt with
+ * the newest three quarters of them. Edits leave the previous version as a
+ * dead document, so the index is also rebuilt, keeping every live post, once
+ * dead documents outnumber live ones.
+ */
+@Service
+public class SearchIndex implements PostIngestListener {
+    private static final Pattern PHRASE = Pattern.compile("\"([^\"]*)\"");
+    // One e-fold of favourites is worth as much as being this many hours newer
+    private static final double FAVOURITE_HOURS = 6;
+    // Below this many dead documents, a rebuild costs more than they do
+    private static final int MIN_DEAD_TO_REBUILD = 1024;
+
+    private final SearchIndexProperties properties;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> docIds = new HashMap<>();
+    private final Map<String, IntList> postings = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private MastodonPost[] posts = new MastodonPost[1024];
+    private long[] createdAt = new long[1024];
+    // Latest createdAt among documents 0..doc, bounds the score of older ones
+    private long[] newestUpTo = new long[1024];
+    private int[] favourites = new int[1024];
+    private int docCount;
+    private int liveCount;
+    private int maxFavourites;
+
+    public SearchIndex(SearchIndexProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public void onIngest(MastodonPost post) {
+        if (post.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Integer existing = docIds.get(post.getId());
+            if (existing != null) {
+                if (Objects.equals(indexedText(posts[existing]), indexedText(post))) {
+                    // Same terms, only refresh what ranking and display use
+                    posts[existing] = post;
+                    favourites[existing] = post.getFavouritesCount();
+                    maxFavourites = Math.max(maxFavourites, post.getFavouritesCount());
+                    return;
+                }
+                remove(existing);
+            }
+            int dead = docCount - liveCount;
+            if (liveCount >= properties.maxPosts()) {
+                rebuild(properties.maxPosts() * 3 / 4);
+            } else if (dead >= MIN_DEAD_TO_REBUILD && dead > liveCount) {
+                rebuild(liveCount);
+            }
+            add(post);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs {@code query} and returns at most {@code max-results} posts, best
+     * first.
+     */
+    public Result search(String query) {
+        long started = System.nanoTime();
+        var phrases = new ArrayList<String>();
+        Matcher matcher = PHRASE.matcher(query);
+        while (matcher.find()) {
+            var phrase = Tokenizer.tokens(matcher.group(1));
+            if (!phrase.isEmpty()) {
+                phrases.add(" " + String.join(" ", phrase) + " ");
+            }
+        }
+        Set<String> terms = new LinkedHashSet<>(Tokenizer.tokens(query));
+        if (terms.isEmpty()) {
+            return new Result(List.of(), 0, System.nanoTime() - started);
+        }
+
+        lock.readLock().lock();
+        try {
+            var lists = new ArrayList<IntList>(terms.size());
+            for (var term : terms) {
+                var list = postings.get(term);
+                if (list == null) {
+                    return new Result(List.of(), 0, System.nanoTime() - started);
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(IntList::size));
+            int[] candidates = Arrays.copyOf(lists.get(0).raw(), lists.get(0).size());
+            int count = candidates.length;
+            for (int i = 1; i < lists.size() && count > 0; i++) {
+                count = intersect(candidates, count, lists.get(i));
+            }
+
+            // Newest documents first: once even the best possible score of
+            // the older ones can't beat the k-th best, stop ranking them
+            int k = properties.maxResults();
+            var best = new PriorityQueue<Integer>(k + 1, Comparator.comparingDouble(this::score));
+            double favouriteBound = FAVOURITE_HOURS * Math.log1p(maxFavourites);
+            int matches = 0;
+            for (int i = count - 1; i >= 0; i--) {
+                int doc = candidates[i];
+                boolean ranking = best.size() < k
+                        || newestUpTo[doc] / 3_600_000.0 + favouriteBound > score(best.peek());
+                if (!ranking && phrases.isEmpty()) {
+                    matches += countLive(candidates, i + 1);
+                    break;
+                }
+                if (deleted.get(doc) || !containsPhrases(doc, phrases)) {
+                    continue;
+                }
+                matches++;
+                if (ranking) {
+                    best.add(doc);
+                    if (best.size() > k) {
+                        best.poll();
+                    }
+                }
+            }
+            var result = new int[best.size()];
+            for (int i = result.length - 1; i >= 0; i--) {
+                result[i] = best.poll();
+            }
+            var top = new ArrayList<MastodonPost>(result.length);
+            for (int doc : result) {
+                top.add(posts[doc]);
+            }
+            return new Result(top, matches, System.nanoTime() - started);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Size of the index itself, excluding the posts it points to (they are
+     * shared with the caches and sessions).
+     */
+    public Stats stats() {
+        lock.readLock().lock();
+        try {
+            long postingBytes = 0;
+            long termBytes = 0;
+            for (var entry : postings.entrySet()) {
+                // HashMap node + key String + IntList + int[] header
+                termBytes += 32 + 40 + entry.getKey().length() + 16 + 16;
+                postingBytes += 4L * entry.getValue().capacity();
+            }
+            // per document: post reference, createdAt, newestUpTo, favourites, id map entry
+            long docBytes = (long) posts.length * (8 + 8 + 8 + 4) + docIds.size() * 48L;
+            long total = postingBytes + termBytes + docBytes;
+            return new Stats(liveCount, postings.size(), total, liveCount == 0 ? 0 : total / liveCount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(MastodonPost post) {
+        int doc = docCount++;
+        if (doc == posts.length) {
+            int capacity = posts.length * 2;
+            posts = Arrays.copyOf(posts, capacity);
+            createdAt = Arrays.copyOf(createdAt, capacity);
+            newestUpTo = Arrays.copyOf(newestUpTo, capacity);
+            favourites = Arrays.copyOf(favourites, capacity);
+        }
+        posts[doc] = post;
+        createdAt[doc] = post.getCreatedAtMillis() == MastodonPost.NO_TIME ? 0 : post.getCreatedAtMillis();
+        newestUpTo[doc] = doc == 0 ? createdAt[doc] : Math.max(newestUpTo[doc - 1], createdAt[doc]);
+        favourites[doc] = post.getFavouritesCount();
+        maxFavourites = Math.max(maxFavourites, post.getFavouritesCount());
+        docIds.put(post.getId(), doc);
+        liveCount++;
+        for (var term : new LinkedHashSet<>(Tokenizer.tokens(indexedText(post)))) {
+            postings.computeIfAbsent(term, t -> new IntList()).add(doc);
+        }
+    }
+
+    private void remove(int doc) {
+        deleted.set(doc);
+        posts[doc] = null;
+        liveCount--;
+    }
+
+    /**
+     * Re-indexes the newest {@code keep} live posts from scratch, dropping
+     * deleted documents and stale postings.
+     */
+    private void rebuild(int keep) {
+        var live = new ArrayList<MastodonPost>(liveCount);
+        for (int doc = 0; doc < docCount; doc++) {
+            if (!deleted.get(doc)) {
+                live.add(posts[doc]);
+            }
+        }
+        live.sort(Comparator.comparingLong(MastodonPost::getCreatedAtMillis).reversed());
+        var kept = live.subList(0, Math.min(keep, live.size()));
+        docIds.clear();
+        postings.clear();
+        deleted.clear();
+        posts = new MastodonPost[Math.max(1024, Integer.highestOneBit(Math.max(1, kept.size())) * 2)];
+        createdAt = new long[posts.length];
+        newestUpTo = new long[posts.length];
+        favourites = new int[posts.length];
+        maxFavourites = 0;
+        docCount = 0;
+        liveCount = 0;
+        // Oldest first, so that document numbers keep following arrival order
+        for (int i = kept.size() - 1; i >= 0; i--) {
+            add(kept.get(i));
+        }
+    }
+
+    private int countLive(int[] docs, int count) {
+        int live = 0;
+        for (int i = 0; i < count; i++) {
+            if (!deleted.get(docs[i])) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    private double score(int doc) {
+        return createdAt[doc] / 3_600_000.0 + FAVOURITE_HOURS * Math.log1p(favourites[doc]);
+    }
+
+    private boolean containsPhrases(int doc, List<String> phrases) {
+        if (phrases.isEmpty()) {
+            return true;
+        }
+        String text = " " + String.join(" ", Tokenizer.tokens(indexedText(posts[doc]))) + " ";
+        for (var phrase : phrases) {
+            if (!text.contains(phrase)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keeps in {@code candidates[0..count)} the documents also in
+     * {@code list}, using galloping search since both are sorted.
+     *
+     * @return the new count
+     */
+    private static int intersect(int[] candidates, int count, IntList list) {
+        int[] values = list.raw();
+        int size = list.size();
+        int kept = 0;
+        int from = 0;
+        for (int i = 0; i < count && from < size; i++) {
+            int target = candidates[i];
+            int step = 1;
+            int to = from;
+            while (to < size && values[to] < target) {
+                from = to + 1;
+                to = from + step;
+                step <<= 1;
+            }
+            int position = Arrays.binarySearch(values, from, Math.min(to + 1, size), target);
+            if (position >= 0) {
+                candidates[kept++] = target;
+                from = position + 1;
+            } else {
+                from = -position - 1;
+            }
+        }
+        return kept;
+    }
+
+    private static String indexedText(MastodonPost post) {
+        var text = new StringBuilder();
+        append(text, post.getPlainText());
+        append(text, post.getSpoilerText());
+        if (post.getTags() != null) {
+            post.getTags().forEach(tag -> append(text, tag.getName()));
+        }
+        if (post.getAccount() != null) {
+            append(text, post.getAccount().getUsername());
+        }
+        return text.toString();
+    }
+
+    private static void append(StringBuilder text, String value) {
+        if (value != null && !value.isEmpty()) {
+            text.append(value).append(' ');
+        }
+    }
+
+    public record Result(List<MastodonPost> posts, int matches, long nanos) {
+    }
+
+    public record Stats(int posts, int terms, long bytes, long bytesPerPost) {
+    }
+}
@@ -0,0 +1,14 @@
+package antix.search;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the in-memory full-text index, bound from
+ * {@code antix.search.*} in application.yaml.
+ */
+@ConfigurationProperties("antix.search")
+public record SearchIndexProperties(
+        @DefaultValue("100000") int maxPosts,
+        @DefaultValue("200") int maxResults) {
+}
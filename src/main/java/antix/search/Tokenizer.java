@@ -0,0 +1,46 @@
+package antix.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Splits text into lower-case, accent-free terms on anything that isn't a
+ * letter or a digit, so that "Café #Java" and "cafe java" match.
+ */
+final class Tokenizer {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private Tokenizer() {
+    }
+
+    static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return folded.toLowerCase(Locale.ROOT);
+    }
+
+    static List<String> tokens(String text) {
+        var tokens = new ArrayList<String>();
+        String normalized = normalize(text);
+        int start = -1;
+        for (int i = 0; i < normalized.length(); i++) {
+            if (Character.isLetterOrDigit(normalized.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            tokens.add(normalized.substring(start));
+        }
+        return tokens;
+    }
+}
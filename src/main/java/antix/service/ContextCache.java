@@ -0,0 +1,121 @@
+package antix.service;
+
+import antix.model.MastodonPost;
+import antix.model.StatusContext;
+import antix.service.UpstreamScheduler.Priority;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Application-wide cache of reply contexts keyed by status id.
+ *
+ * An entry stays valid while the post still reports the same
+ * {@code repliesCount} and {@code editedAt} it had when the context was
+ * fetched, and for at most {@code ttl}. Concurrent requests for the same
+ * status share one upstream call.
+ *
+ * {@link #prefetch} warms the cache in the background. Prefetches are capped
+ * at {@code prefetchConcurrency} and are simply dropped when that many are
+ * already running, so they never queue up behind or delay user requests.
+ * They also run at the lowest {@link UpstreamScheduler} priority, while
+ * {@link #get} runs at {@link Priority#REPLIES}.
+ */
+@Service
+public class ContextCache {
+    private final MastodonClient mastodonClient;
+    private final ContextCacheProperties properties;
+    private final Map<String, Entry> entries;
+    private final ConcurrentHashMap<String, CompletableFuture<StatusContext>> inFlight = new ConcurrentHashMap<>();
+    private final Semaphore prefetchPermits;
+
+    public ContextCache(MastodonClient mastodonClient, ContextCacheProperties properties) {
+        this.mastodonClient = mastodonClient;
+        this.properties = properties;
+        this.prefetchPermits = new Semaphore(properties.prefetchConcurrency());
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > properties.maxEntries();
+            }
+        };
+    }
+
+    public int getPrefetchDepth() {
+        return properties.prefetchDepth();
+    }
+
+    /**
+     * Returns the context of {@code post}, from the cache when still valid.
+     * The returned future can be cancelled without affecting the shared
+     * upstream fetch, whose result is still cached.
+     */
+    public CompletableFuture<StatusContext> get(MastodonPost post) {
+        var cached = lookup(post);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        // A prefetch of the same post may have been shed, ask again at our priority
+        return UpstreamScheduler.withPriority(Priority.REPLIES, () -> load(post))
+                .exceptionallyCompose(error -> RateLimitedException.find(error) != null
+                        ? UpstreamScheduler.withPriority(Priority.REPLIES, () -> load(post))
+                        : CompletableFuture.failedFuture(error));
+    }
+
+    /**
+     * Loads the context of {@code post} in the background if it has replies,
+     * isn't cached yet and a prefetch slot is free.
+     */
+    public void prefetch(MastodonPost post) {
+        if (post.getRepliesCount() == 0 || lookup(post) != null || inFlight.containsKey(post.getId())) {
+            return;
+        }
+        if (!prefetchPermits.tryAcquire()) {
+            return;
+        }
+        UpstreamScheduler.withPriority(Priority.BACKGROUND, () -> load(post))
+                .whenComplete((context, error) -> prefetchPermits.release());
+    }
+
+    private StatusContext lookup(MastodonPost post) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(post.getId());
+        }
+        if (entry == null) {
+            return null;
+        }
+        boolean fresh = System.nanoTime() - entry.loadedAt() <= properties.ttl().toNanos()
+                && entry.repliesCount() == post.getRepliesCount()
+                && entry.editedAt() == post.getEditedAtMillis();
+        return fresh ? entry.context() : null;
+    }
+
+    private CompletableFuture<StatusContext> load(MastodonPost post) {
+        String id = post.getId();
+        var future = new CompletableFuture<StatusContext>();
+        var existing = inFlight.putIfAbsent(id, future);
+        if (existing != null) {
+            return existing;
+        }
+        mastodonClient.getContextAsync(id).whenComplete((context, error) -> {
+            inFlight.remove(id, future);
+            if (error != null) {
+                future.completeExceptionally(error);
+                return;
+            }
+            synchronized (entries) {
+                entries.put(id, new Entry(context, post.getRepliesCount(), post.getEditedAtMillis(), System.nanoTime()));
+            }
+            future.complete(context);
+        });
+        return future;
+    }
+
+    private record Entry(StatusContext context, int repliesCount, long editedAt, long loadedAt) {
+    }
+}
@@ -0,0 +1,18 @@
+package antix.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the reply context cache and its prefetcher, bound from
+ * {@code antix.context-cache.*} in application.yaml.
+ */
+@ConfigurationProperties("antix.context-cache")
+public record ContextCacheProperties(
+        @DefaultValue("5m") Duration ttl,
+        @DefaultValue("2000") int maxEntries,
+        @DefaultValue("2") int prefetchDepth,
+        @DefaultValue("4") int prefetchConcurrency) {
+}
@@ -0,0 +1,185 @@
+package antix.service;
+
+import antix.service.UpstreamScheduler.Priority;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the followed hashtags ({@code antix.followed-tags.tags}) warm in the
+ * {@link TimelineCache}, so that opening one is served from memory.
+ *
+ * Each tag is refreshed with a {@code since_id} request on its own interval,
+ * adapted to its recent post rate (an exponentially weighted average of the
+ * new posts per second seen by the last refreshes): busy tags are refreshed
+ * often, quiet ones rarely. The first refreshes are spread evenly over
+ * {@code minInterval} and every interval is jittered, so that refreshes don't
+ * line up into bursts. They run at {@link Priority#BACKGROUND} and back off
+ * on failure, while the posts already cached are still served; how stale each
+ * tag is can be read with {@link #staleness}.
+ */
+@Slf4j
+@Service
+public class FollowedTags {
+    // Weight of the latest refresh in the post rate
+    private static final double ALPHA = 0.3;
+
+    private final TimelineCache timelineCache;
+    private final MastodonClient mastodonClient;
+    private final FollowedTagsProperties properties;
+    private final Map<String, Followed> followed = new LinkedHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("followed-tags").daemon().factory());
+
+    public FollowedTags(TimelineCache timelineCache, MastodonClient mastodonClient,
+            FollowedTagsProperties properties) {
+        this.timelineCache = timelineCache;
+        this.mastodonClient = mastodonClient;
+        this.properties = properties;
+        for (var tag : properties.tags()) {
+            String key = key(tag);
+            if (!key.isEmpty()) {
+                followed.putIfAbsent(key, new Followed(key, properties.minInterval()));
+            }
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        long spread = properties.minInterval().toNanos();
+        int i = 0;
+        for (var tag : followed.values()) {
+            timelineCache.pin(tag.name, properties.maxPosts());
+            schedule(tag, spread * i++ / followed.size());
+        }
+        if (!followed.isEmpty()) {
+            log.info("Following {} hashtags", followed.size());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public Set<String> tags() {
+        return Collections.unmodifiableSet(followed.keySet());
+    }
+
+    public boolean isFollowed(String tag) {
+        return followed.containsKey(key(tag));
+    }
+
+    /**
+     * Time since a followed tag was last loaded from upstream; empty when the
+     * tag isn't followed or hasn't been loaded yet.
+     */
+    public Optional<Duration> staleness(String tag) {
+        return isFollowed(tag) ? timelineCache.age(tag) : Optional.empty();
+    }
+
+    /**
+     * Current refresh interval of a followed tag, before jitter.
+     */
+    public Optional<Duration> interval(String tag) {
+        var tagState = followed.get(key(tag));
+        return tagState == null ? Optional.empty() : Optional.of(tagState.interval());
+    }
+
+    private void refresh(Followed tag) {
+        UpstreamScheduler.withPriority(Priority.BACKGROUND,
+                        () -> mastodonClient.async(() -> timelineCache.refresh(tag.name)))
+                .whenComplete((fresh, error) -> {
+                    Duration next;
+                    if (error != null) {
+                        next = tag.failed(RateLimitedException.find(error));
+                        log.warn("Refreshing followed #{} failed, next try in {} s: {}", tag.name,
+                                next.toSeconds(), error.getMessage());
+                    } else {
+                        next = tag.refreshed(fresh, System.nanoTime());
+                    }
+                    double jitter = properties.jitter() * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+                    schedule(tag, (long) (next.toNanos() * (1 + jitter)));
+                });
+    }
+
+    private void schedule(Followed tag, long delayNanos) {
+        try {
+            scheduler.schedule(() -> refresh(tag), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    private Duration clamp(Duration interval) {
+        if (interval.compareTo(properties.minInterval()) < 0) {
+            return properties.minInterval();
+        }
+        return interval.compareTo(properties.maxInterval()) > 0 ? properties.maxInterval() : interval;
+    }
+
+    private static String key(String tag) {
+        return StringUtils.removeStart(tag.trim(), "#").toLowerCase(Locale.ROOT);
+    }
+
+    private final class Followed {
+        final String name;
+        // New posts per second, negative until two refreshes have been seen
+        private double rate = -1;
+        private long refreshedAt;
+        private Duration interval;
+
+        Followed(String name, Duration interval) {
+            this.name = name;
+            this.interval = interval;
+        }
+
+        synchronized Duration interval() {
+            return interval;
+        }
+
+        /**
+         * {@code fresh} new posts arrived since the previous refresh: updates
+         * the rate and returns the next interval, aiming at
+         * {@code targetNewPosts} per refresh.
+         */
+        synchronized Duration refreshed(int fresh, long now) {
+            if (refreshedAt != 0) {
+                double observed = fresh / Math.max(1e-3, (now - refreshedAt) / 1e9);
+                rate = rate < 0 ? observed : ALPHA * observed + (1 - ALPHA) * rate;
+            }
+            refreshedAt = now;
+            interval = rate <= 0
+                    ? (rate < 0 ? properties.minInterval() : properties.maxInterval())
+                    : clamp(Duration.ofMillis((long) (properties.targetNewPosts() / rate * 1000)));
+            return interval;
+        }
+
+        /**
+         * Doubles the interval, or waits for the rate limit to reset if that is
+         * longer.
+         */
+        synchronized Duration failed(RateLimitedException limited) {
+            interval = clamp(interval.multipliedBy(2));
+            if (limited != null && limited.getRetryAfter().compareTo(interval) > 0) {
+                interval = limited.getRetryAfter();
+            }
+            return interval;
+        }
+    }
+}
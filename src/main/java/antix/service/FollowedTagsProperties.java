@@ -0,0 +1,25 @@
+package antix.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Hashtags kept warm by {@link FollowedTags}, bound from
+ * {@code antix.followed-tags.*} in application.yaml.
+ *
+ * Each tag is refreshed about every {@code targetNewPosts} new posts at its
+ * recent rate, within {@code minInterval} and {@code maxInterval}, give or
+ * take {@code jitter} (a fraction of the interval).
+ */
+@ConfigurationProperties("antix.followed-tags")
+public record FollowedTagsProperties(
+        @DefaultValue List<String> tags,
+        @DefaultValue("100") int maxPosts,
+        @DefaultValue("10") int targetNewPosts,
+        @DefaultValue("30s") Duration minInterval,
+        @DefaultValue("10m") Duration maxInterval,
+        @DefaultValue("0.1") double jitter) {
+}
@@ -0,0 +1,202 @@
+package antix.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Shares Mastodon hashtag streams between UI sessions.
+ *
+ * The first subscriber to a tag opens one server-sent event stream on a
+ * virtual thread; later subscribers join it and the last one to leave closes
+ * it. Each event is parsed once and handed to every listener. A dropped
+ * stream is reopened with jittered exponential backoff for as long as
+ * someone is listening.
+ */
+@Slf4j
+@Service
+public class HashtagStreamHub {
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final MastodonClient mastodonClient;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Upstream> upstreams = new HashMap<>();
+
+    public HashtagStreamHub(MastodonClient mastodonClient) {
+        this.mastodonClient = mastodonClient;
+    }
+
+    /**
+     * Registers {@code listener} for the events of {@code tag}. Listeners are
+     * called on the stream's thread and must not block.
+     *
+     * @return closing it unsubscribes
+     */
+    public AutoCloseable subscribe(String tag, Consumer<StreamEvent> listener) {
+        String key = tag.toLowerCase(Locale.ROOT);
+        Upstream upstream;
+        synchronized (upstreams) {
+            upstream = upstreams.computeIfAbsent(key, Upstream::new);
+            upstream.listeners.add(listener);
+            upstream.start();
+        }
+        return () -> unsubscribe(upstream, listener);
+    }
+
+    public int subscriptionCount() {
+        synchronized (upstreams) {
+            return upstreams.size();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void unsubscribe(Upstream upstream, Consumer<StreamEvent> listener) {
+        synchronized (upstreams) {
+            upstream.listeners.remove(listener);
+            if (upstream.listeners.isEmpty() && upstreams.get(upstream.tag) == upstream) {
+                upstreams.remove(upstream.tag);
+                upstream.stop();
+            }
+        }
+    }
+
+    private final class Upstream {
+        final String tag;
+        final List<Consumer<StreamEvent>> listeners = new CopyOnWriteArrayList<>();
+        volatile boolean stopped;
+        Future<?> task;
+        InputStream body;
+
+        Upstream(String tag) {
+            this.tag = tag;
+        }
+
+        void start() {
+            if (task == null) {
+                task = executor.submit(this::run);
+            }
+        }
+
+        void stop() {
+            stopped = true;
+            task.cancel(true);
+            closeBody();
+        }
+
+        private void run() {
+            int attempt = 0;
+            while (!stopped) {
+                try (InputStream in = mastodonClient.openHashtagStream(tag)) {
+                    body = in;
+                    attempt = 0;
+                    read(in);
+                } catch (IOException e) {
+                    if (!stopped) {
+                        log.warn("Stream for #{} dropped: {}", tag, e.getMessage());
+                    }
+                } finally {
+                    body = null;
+                }
+                if (stopped) {
+                    return;
+                }
+                long backoff = Math.min(MAX_BACKOFF_MILLIS, 500L << Math.min(attempt++, 6));
+                try {
+                    Thread.sleep(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Minimal text/event-stream parser: dispatches on blank lines, joins
+         * multi-line data and ignores comments (heartbeats).
+         */
+        private void read(InputStream in) throws IOException {
+            var reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String event = null;
+            var data = new StringBuilder();
+            String line;
+            while (!stopped && (line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    if (event != null && !data.isEmpty()) {
+                        dispatch(event, data.toString());
+                    }
+                    event = null;
+                    data.setLength(0);
+                } else if (line.startsWith("event:")) {
+                    event = line.substring(6).trim();
+                } else if (line.startsWith("data:")) {
+                    if (!data.isEmpty()) {
+                        data.append('\n');
+                    }
+                    data.append(line.substring(5).stripLeading());
+                }
+            }
+        }
+
+        private void dispatch(String event, String data) {
+            StreamEvent parsed;
+            try {
+                parsed = switch (event) {
+                    case "update" -> post(StreamEvent.Type.UPDATE, data);
+                    case "status.update" -> post(StreamEvent.Type.STATUS_UPDATE, data);
+                    case "delete" -> new StreamEvent(StreamEvent.Type.DELETE, data.trim(), null);
+                    default -> null;
+                };
+            } catch (IOException e) {
+                log.warn("Unreadable {} event on #{}: {}", event, tag, e.getMessage());
+                return;
+            }
+            if (parsed == null) {
+                return;
+            }
+            for (var listener : listeners) {
+                try {
+                    listener.accept(parsed);
+                } catch (RuntimeException e) {
+                    log.warn("Stream listener for #{} failed", tag, e);
+                }
+            }
+        }
+
+        private StreamEvent post(StreamEvent.Type type, String json) throws IOException {
+            var post = mastodonClient.getJsonReader()
+                    .readPost(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+            return new StreamEvent(type, post.getId(), post);
+        }
+
+        private void closeBody() {
+            var in = body;
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                    // closing only to unblock the reader
+                }
+            }
+        }
+    }
+}
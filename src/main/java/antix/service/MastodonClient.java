@@ -0,0 +1,262 @@
+package antix.service;
+
+import antix.metrics.UpstreamMetrics;
+import antix.model.MastodonPost;
+import antix.model.StatusContext;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.utils.URIBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Client for the Mastodon REST API.
+ *
+ * A single instance is shared by every UI session: the underlying
+ * {@link HttpClient} keeps its connections alive (HTTP/2 when the server
+ * supports it) and responses are parsed by one shared
+ * {@link MastodonJsonReader}, streaming straight from the socket. Every
+ * request goes through the {@link UpstreamScheduler}, at the priority of the
+ * calling thread, and is measured by {@link UpstreamMetrics}.
+ */
+@Service
+public class MastodonClient {
+    private final MastodonProperties properties;
+    private final HttpClient httpClient;
+    private final MastodonJsonReader jsonReader;
+    private final UpstreamMetrics metrics;
+    private final UpstreamScheduler scheduler;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public MastodonClient(MastodonProperties properties, ObjectProvider<PostIngestListener> ingestListeners,
+            UpstreamMetrics metrics, UpstreamScheduler scheduler) {
+        this.properties = properties;
+        this.metrics = metrics;
+        this.scheduler = scheduler;
+        this.httpClient = HttpClient.newBuilder()
+                .executor(executor)
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(properties.connectTimeout())
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.jsonReader = new MastodonJsonReader(
+                post -> ingestListeners.orderedStream().forEach(listener -> listener.onIngest(post)));
+    }
+
+    public String getBaseUrl() {
+        return properties.baseUrl();
+    }
+
+    public List<MastodonPost> getTagTimeline(String tag, int limit) throws IOException {
+        return getTagTimeline(tag, limit, null, null);
+    }
+
+    /**
+     * Fetches a page of a hashtag timeline, newest first. {@code maxId} and
+     * {@code sinceId} are optional Mastodon cursors and are skipped when null.
+     */
+    public List<MastodonPost> getTagTimeline(String tag, int limit, String maxId, String sinceId)
+            throws IOException {
+        var posts = new ArrayList<MastodonPost>(limit);
+        streamTagTimeline(tag, limit, maxId, sinceId, posts::add);
+        return posts;
+    }
+
+    /**
+     * Streams a page of a hashtag timeline to {@code consumer}, one post at a
+     * time as it is parsed from the response.
+     */
+    public int streamTagTimeline(String tag, int limit, String maxId, String sinceId,
+            Consumer<MastodonPost> consumer) throws IOException {
+        var uri = uri("/api/v1/timelines/tag/" + tag,
+                "limit", String.valueOf(limit),
+                "max_id", maxId,
+                "since_id", sinceId);
+        var call = metrics.start("timeline", tag);
+        try (InputStream body = get(uri, call)) {
+            int count = jsonReader.readPosts(body, consumer);
+            metrics.pagePosts(count);
+            return count;
+        } catch (IOException | RuntimeException e) {
+            call.failed(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Fetches the replies of a status. Only {@code descendants} is bound; the
+     * {@code ancestors} of the returned context are left empty.
+     */
+    public StatusContext getContext(String statusId) throws IOException {
+        var descendants = new ArrayList<MastodonPost>();
+        streamDescendants(statusId, descendants::add);
+        var context = new StatusContext();
+        context.setAncestors(List.of());
+        context.setDescendants(descendants);
+        return context;
+    }
+
+    public int streamDescendants(String statusId, Consumer<MastodonPost> consumer) throws IOException {
+        var call = metrics.start("context", null);
+        try (InputStream body = get(contextUri(statusId), call)) {
+            int count = jsonReader.readDescendants(body, consumer);
+            metrics.replies(count);
+            return count;
+        } catch (IOException | RuntimeException e) {
+            call.failed(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Fetches the context of a status on a virtual thread. Cancelling the
+     * returned future interrupts the fetch if it is still running.
+     */
+    public CompletableFuture<StatusContext> getContextAsync(String statusId) {
+        return supplyAsync(() -> getContext(statusId));
+    }
+
+    public URI contextUri(String statusId) {
+        return uri("/api/v1/statuses/" + statusId + "/context");
+    }
+
+    /**
+     * Opens the server-sent event stream of a hashtag. The caller reads it
+     * until it is done and must close it.
+     */
+    public InputStream openHashtagStream(String tag) throws IOException {
+        var uri = uriOn(properties.streamingBaseUrl(), "/api/v1/streaming/hashtag", "tag", tag);
+        var call = metrics.start("stream", tag);
+        return send(uri, "text/event-stream", null, call);
+    }
+
+    public MastodonJsonReader getJsonReader() {
+        return jsonReader;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs {@code call} on the client's virtual threads, at the scheduler
+     * priority of the calling thread. Cancelling the returned future
+     * interrupts it.
+     */
+    public <T> CompletableFuture<T> async(IOSupplier<T> call) {
+        return supplyAsync(call);
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(IOSupplier<T> call) {
+        var result = new CompletableFuture<T>();
+        var priority = UpstreamScheduler.currentPriority();
+        var task = executor.submit(() -> UpstreamScheduler.withPriority(priority, () -> {
+            try {
+                result.complete(call.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+            return null;
+        }));
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    @FunctionalInterface
+    public interface IOSupplier<T> {
+        T get() throws IOException;
+    }
+
+    private URI uri(String path, String... params) {
+        return uriOn(properties.baseUrl(), path, params);
+    }
+
+    private URI uriOn(String base, String path, String... params) {
+        try {
+            var builder = new URIBuilder(base + path);
+            for (int i = 0; i + 1 < params.length; i += 2) {
+                if (params[i + 1] != null) {
+                    builder.addParameter(params[i], params[i + 1]);
+                }
+            }
+            return builder.build();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private InputStream get(URI uri, UpstreamMetrics.Call call) throws IOException {
+        return call.body(send(uri, "application/json", properties.requestTimeout(), call));
+    }
+
+    private InputStream send(URI uri, String accept, Duration timeout, UpstreamMetrics.Call call)
+            throws IOException {
+        var builder = HttpRequest.newBuilder(uri)
+                .header("Accept", accept)
+                .GET();
+        if (timeout != null) {
+            builder.timeout(timeout);
+        }
+        if (StringUtils.isNotEmpty(properties.accessToken())) {
+            builder.header("Authorization", "Bearer " + properties.accessToken());
+        }
+        var request = builder.build();
+        for (int attempt = 0; ; attempt++) {
+            HttpResponse<InputStream> response;
+            try {
+                scheduler.acquire();
+                response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            } catch (IOException e) {
+                call.failed(e);
+                throw e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                var interrupted = new InterruptedIOException("Interrupted while fetching " + uri);
+                call.failed(interrupted);
+                throw interrupted;
+            }
+            int status = response.statusCode();
+            call.headers(status);
+            scheduler.update(status, response.headers());
+            if (status / 100 == 2) {
+                return response.body();
+            }
+            response.body().close();
+            if (scheduler.shouldRetry(status, attempt)) {
+                try {
+                    scheduler.backoff(attempt);
+                } catch (InterruptedIOException e) {
+                    call.failed(e);
+                    throw e;
+                }
+                continue;
+            }
+            var error = status == 429
+                    ? new RateLimitedException("HTTP 429 from " + uri, scheduler.untilReset())
+                    : new IOException("HTTP " + status + " from " + uri);
+            call.failed(error);
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package antix.service;
+
+import antix.model.MastodonPost;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Token-streaming reader for Mastodon API payloads.
+ *
+ * Statuses are bound one at a time straight from the input stream and handed
+ * to a consumer, so a response is never buffered as a string or a tree.
+ * Subtrees we don't need (the {@code ancestors} of a context, unknown fields)
+ * are skipped at the token level. Each post goes through {@link PostIngest}
+ * before it is emitted.
+ */
+public class MastodonJsonReader {
+    private final ObjectMapper mapper;
+    private final ObjectReader postReader;
+    private final Consumer<MastodonPost> onIngest;
+
+    public MastodonJsonReader() {
+        this(post -> {
+        });
+    }
+
+    /**
+     * @param onIngest called with every post read, before it is emitted
+     */
+    public MastodonJsonReader(Consumer<MastodonPost> onIngest) {
+        this(new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES), onIngest);
+    }
+
+    public MastodonJsonReader(ObjectMapper mapper, Consumer<MastodonPost> onIngest) {
+        this.mapper = mapper;
+        this.postReader = mapper.readerFor(MastodonPost.class);
+        this.onIngest = onIngest;
+    }
+
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    public MastodonPost readPost(InputStream in) throws IOException {
+        return ingest(postReader.readValue(in));
+    }
+
+    /**
+     * Reads a JSON array of statuses, e.g. a timeline page.
+     *
+     * @return the number of statuses emitted
+     */
+    public int readPosts(InputStream in, Consumer<MastodonPost> consumer) throws IOException {
+        try (JsonParser parser = mapper.createParser(in)) {
+            expect(parser.nextToken(), JsonToken.START_ARRAY);
+            return readArray(parser, consumer);
+        }
+    }
+
+    /**
+     * Reads a {@code /statuses/{id}/context} payload and emits only its
+     * {@code descendants}.
+     *
+     * @return the number of statuses emitted
+     */
+    public int readDescendants(InputStream in, Consumer<MastodonPost> consumer) throws IOException {
+        int count = 0;
+        try (JsonParser parser = mapper.createParser(in)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("descendants".equals(field) && value == JsonToken.START_ARRAY) {
+                    count += readArray(parser, consumer);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return count;
+    }
+
+    private int readArray(JsonParser parser, Consumer<MastodonPost> consumer) throws IOException {
+        int count = 0;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            consumer.accept(ingest(postReader.readValue(parser)));
+            count++;
+        }
+        expect(parser.currentToken(), JsonToken.END_ARRAY);
+        return count;
+    }
+
+    private MastodonPost ingest(MastodonPost post) {
+        PostIngest.ingest(post);
+        onIngest.accept(post);
+        return post;
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Expected " + expected + " but got " + actual);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package antix.service;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Connection settings for the upstream Mastodon instance, bound from
+ * {@code antix.mastodon.*} in application.yaml.
+ *
+ * The base URL can be pointed at a local stand-in server for tests. The
+ * streaming URL defaults to the base URL; the access token is optional and
+ * only sent when set.
+ */
+@ConfigurationProperties("antix.mastodon")
+public record MastodonProperties(
+        @DefaultValue("https://mastodon.social") String baseUrl,
+        @DefaultValue("5s") Duration connectTimeout,
+        @DefaultValue("10s") Duration requestTimeout,
+        @DefaultValue("") String streamingUrl,
+        @DefaultValue("") String accessToken) {
+
+    public String streamingBaseUrl() {
+        return StringUtils.isEmpty(streamingUrl) ? baseUrl : streamingUrl;
+    }
+}
@@ -0,0 +1,119 @@
+package antix.service;
+
+import antix.model.Account;
+import antix.model.MastodonPost;
+import antix.model.MediaAttachment;
+import antix.model.Tag;
+import org.apache.commons.lang3.StringUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.safety.Cleaner;
+import org.jsoup.safety.Safelist;
+
+import java.util.List;
+
+/**
+ * Prepares a post right after it is deserialized, so that what the sessions
+ * hold is a compact read model.
+ *
+ * The derived text is computed once, so renderers only read fields instead
+ * of parsing HTML on every row. Then what the view never shows is dropped:
+ * the raw HTML (the sanitized copy is kept), {@code filtered},
+ * {@code application}, the card (only whether there was one is kept),
+ * mentions, most account fields and the full-size media metadata. Accounts and tags are shared between posts
+ * through weak interning pools, so an author posting often is held once.
+ */
+public final class PostIngest {
+    public static final int PREVIEW_LENGTH = 150;
+
+    private static final Cleaner CLEANER = new Cleaner(Safelist.basic()
+            .addAttributes("span", "class")
+            .addAttributes("a", "class", "target"));
+    private static final WeakInterner<Account> ACCOUNTS = new WeakInterner<>();
+    private static final WeakInterner<Tag> TAGS = new WeakInterner<>();
+
+    private PostIngest() {
+    }
+
+    public static MastodonPost ingest(MastodonPost post) {
+        derive(post);
+        return compact(post);
+    }
+
+    /**
+     * The dropping and sharing half of {@link #ingest}, for posts whose
+     * derived text is already known.
+     */
+    public static MastodonPost compact(MastodonPost post) {
+        post.setContent(null);
+        post.setFiltered(null);
+        post.setApplication(null);
+        post.setCard(null);
+        post.setMentions(null);
+        post.setVisibility(intern(post.getVisibility()));
+        post.setLanguage(intern(post.getLanguage()));
+        post.setAccount(ACCOUNTS.intern(compact(post.getAccount())));
+        if (post.getTags() != null) {
+            post.setTags(post.getTags().stream().map(TAGS::intern).toList());
+        }
+        if (post.getMediaAttachments() != null) {
+            post.getMediaAttachments().forEach(PostIngest::compact);
+            post.setMediaAttachments(List.copyOf(post.getMediaAttachments()));
+        }
+        if (post.getReblog() != null) {
+            compact(post.getReblog());
+        }
+        return post;
+    }
+
+    private static void derive(MastodonPost post) {
+        post.setHasCard(post.isHasCard() || post.getCard() != null);
+        // Already done if the raw HTML is gone, e.g. a post read back from the store
+        if (post.getContent() != null || post.getSafeHtml() == null) {
+            String content = StringUtils.defaultString(post.getContent());
+            Document document = Jsoup.parseBodyFragment(content);
+            String text = document.text();
+            post.setPlainText(text);
+            post.setPreview(StringUtils.left(text, PREVIEW_LENGTH));
+            post.setSafeHtml(CLEANER.clean(document).body().html());
+        }
+        if (post.getReblog() != null) {
+            derive(post.getReblog());
+        }
+    }
+
+    /**
+     * Keeps what identifies and shows an author; counters and profile
+     * fields would also stop posts of the same author from sharing it.
+     */
+    private static Account compact(Account account) {
+        if (account == null) {
+            return null;
+        }
+        var compact = new Account();
+        compact.setId(account.getId());
+        compact.setUsername(account.getUsername());
+        compact.setAcct(account.getAcct());
+        compact.setDisplayName(account.getDisplayName());
+        compact.setUrl(account.getUrl());
+        compact.setAvatar(account.getAvatar());
+        compact.setBot(account.isBot());
+        return compact;
+    }
+
+    private static void compact(MediaAttachment attachment) {
+        attachment.setRemoteUrl(null);
+        attachment.setPreviewRemoteUrl(null);
+        attachment.setTextUrl(null);
+        attachment.setType(intern(attachment.getType()));
+        var meta = attachment.getMeta();
+        if (meta != null) {
+            meta.setOriginal(null);
+            meta.setFocus(null);
+        }
+    }
+
+    private static String intern(String value) {
+        return value == null ? null : value.intern();
+    }
+}
@@ -0,0 +1,14 @@
+package antix.service;
+
+import antix.model.MastodonPost;
+
+/**
+ * Beans implementing this are told about every post that arrives from
+ * upstream, right after {@link PostIngest}, and about posts of the post store
+ * the first time they are read back in this process.
+ * Called on fetching threads; implementations must be thread-safe and fast.
+ */
+public interface PostIngestListener {
+
+    void onIngest(MastodonPost post);
+}
@@ -0,0 +1,26 @@
+package antix.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the {@link UpstreamScheduler}, bound from
+ * {@code antix.rate-limit.*} in application.yaml.
+ *
+ * The reserves are fractions of the limit the server reports: background
+ * work only runs while more than {@code backgroundReserve} of it is left,
+ * replies while more than {@code repliesReserve} is. {@code defaultLimit} is
+ * assumed until the first response carries the headers.
+ */
+@ConfigurationProperties("antix.rate-limit")
+public record RateLimitProperties(
+        @DefaultValue("300") int defaultLimit,
+        @DefaultValue("0.2") double backgroundReserve,
+        @DefaultValue("0.05") double repliesReserve,
+        @DefaultValue("10s") Duration maxWait,
+        @DefaultValue("3") int maxRetries,
+        @DefaultValue("500ms") Duration backoffBase,
+        @DefaultValue("30s") Duration backoffMax) {
+}
@@ -0,0 +1,36 @@
+package antix.service;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * An upstream request that was not sent, or kept being refused with HTTP
+ * 429, because the rate limit of the Mastodon API is used up.
+ */
+public class RateLimitedException extends IOException {
+    private final Duration retryAfter;
+
+    public RateLimitedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * How long until the server restores the budget, as far as known.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * The {@link RateLimitedException} in the causes of {@code error}, or null.
+     */
+    public static RateLimitedException find(Throwable error) {
+        for (var cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RateLimitedException limited) {
+                return limited;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,14 @@
+package antix.service;
+
+import antix.model.MastodonPost;
+
+/**
+ * An event of a Mastodon streaming timeline. {@code post} is set for
+ * {@code update} and {@code status.update}, {@code statusId} for every type.
+ */
+public record StreamEvent(Type type, String statusId, MastodonPost post) {
+
+    public enum Type {
+        UPDATE, DELETE, STATUS_UPDATE
+    }
+}
@@ -0,0 +1,316 @@
+package antix.service;
+
+import antix.model.MastodonPost;
+import antix.store.PostStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Application-wide cache of hashtag timelines, shared by every UI session.
+ *
+ * Entries live for {@code ttl}; a stale entry is topped up with a
+ * {@code since_id} request and the new posts are merged in front. The number
+ * of cached tags is bounded and the least recently used tag is evicted first.
+ * Concurrent misses on the same tag share a single upstream request.
+ *
+ * Every fetched post is also written to the {@link PostStore}, which serves
+ * the first load of a tag after a restart and stands in when upstream is
+ * down.
+ *
+ * Pinned tags (the followed ones) are served from memory whatever their age
+ * and never evicted: {@link FollowedTags} keeps them up to date with
+ * {@link #refresh}.
+ */
+@Slf4j
+@Service
+public class TimelineCache {
+    // Largest limit the Mastodon timeline API accepts
+    private static final int MAX_PAGE_SIZE = 40;
+
+    private final MastodonClient mastodonClient;
+    private final TimelineCacheProperties properties;
+    private final PostStore postStore;
+    private final Map<String, Entry> entries;
+    // Pinned tags and the number of posts kept for each
+    private final Map<String, Integer> pinned = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<List<MastodonPost>>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TimelineCache(MastodonClient mastodonClient, TimelineCacheProperties properties, PostStore postStore) {
+        this.mastodonClient = mastodonClient;
+        this.properties = properties;
+        this.postStore = postStore;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= properties.maxTags()) {
+                    return false;
+                }
+                // The least recently used tag that isn't pinned
+                for (var iterator = entrySet().iterator(); iterator.hasNext(); ) {
+                    if (!pinned.containsKey(iterator.next().getKey())) {
+                        iterator.remove();
+                        evictions.increment();
+                        break;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    public List<MastodonPost> get(String tag) throws IOException {
+        String key = key(tag);
+        Entry entry = entry(key);
+        boolean fresh = entry != null
+                && (pinned.containsKey(key) || !entry.isStale(System.nanoTime(), properties.ttl().toNanos()));
+        if (fresh) {
+            hits.increment();
+            return entry.posts();
+        }
+        misses.increment();
+        return loadShared(key, entry, true);
+    }
+
+    /**
+     * {@link #get} on a virtual thread, failing with a
+     * {@link java.util.concurrent.TimeoutException} after
+     * {@code fan-out-timeout}. A late answer still fills the cache.
+     *
+     * The returned future can be cancelled without affecting the load, which
+     * other callers of the same tag may be waiting for.
+     */
+    public CompletableFuture<List<MastodonPost>> getAsync(String tag) {
+        // Cancelling the task itself would interrupt a load shared through inFlight
+        return mastodonClient.async(() -> get(tag)).copy().orTimeout(
+                properties.fanOutTimeout().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Keeps {@code tag} in memory with up to {@code maxPosts} posts, served
+     * whatever its age and never evicted.
+     */
+    public void pin(String tag, int maxPosts) {
+        pinned.put(key(tag), maxPosts);
+    }
+
+    /**
+     * Tops {@code tag} up from upstream now, whatever its age, filling it
+     * with older posts up to its size when it is pinned. Unlike {@link #get},
+     * an upstream failure is thrown rather than hidden behind known posts,
+     * unless a load of the tag was already under way: the refresh
+     * then waits for it and takes its answer.
+     *
+     * @return the number of posts that weren't cached yet
+     */
+    public int refresh(String tag) throws IOException {
+        String key = key(tag);
+        Entry entry = entry(key);
+        String head = entry == null || entry.posts().isEmpty() ? null : entry.posts().get(0).getId();
+        var posts = loadShared(key, entry, false);
+        int fresh = 0;
+        while (fresh < posts.size() && !posts.get(fresh).getId().equals(head)) {
+            fresh++;
+        }
+        return fresh;
+    }
+
+    /**
+     * Time since {@code tag} was last loaded from upstream, if it is cached.
+     */
+    public Optional<Duration> age(String tag) {
+        Entry entry = entry(key(tag));
+        return entry == null ? Optional.empty() : Optional.of(Duration.ofNanos(System.nanoTime() - entry.loadedAt()));
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+
+    /**
+     * A page of {@code tag} older than {@code maxId}, fetched upstream and
+     * stored, or read from the post store when upstream can't be reached.
+     */
+    public List<MastodonPost> getOlder(String tag, String maxId, int limit) throws IOException {
+        try {
+            var posts = mastodonClient.getTagTimeline(tag, limit, maxId, null);
+            postStore.append(posts, tag);
+            return posts;
+        } catch (IOException e) {
+            var stored = postStore.olderForTag(tag, maxId, limit);
+            if (stored.isEmpty()) {
+                throw e;
+            }
+            log.warn("Serving #{} older than {} from the post store: {}", tag, maxId, e.getMessage());
+            return stored;
+        }
+    }
+
+    public CompletableFuture<List<MastodonPost>> getOlderAsync(String tag, String maxId, int limit) {
+        return mastodonClient.async(() -> getOlder(tag, maxId, limit));
+    }
+
+    /**
+     * Loads {@code key} and caches it, or waits for the load of it already
+     * under way, so that a tag is asked upstream once at a time.
+     */
+    private List<MastodonPost> loadShared(String key, Entry entry, boolean fallBack) throws IOException {
+        var mine = new CompletableFuture<List<MastodonPost>>();
+        var existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            // A load that finished between the lookup and putIfAbsent has left its entry
+            Entry current = entry(key);
+            if (current != null && current != entry) {
+                mine.complete(current.posts());
+                return current.posts();
+            }
+            var posts = load(key, entry, fallBack);
+            synchronized (entries) {
+                entries.put(key, new Entry(posts, System.nanoTime()));
+            }
+            mine.complete(posts);
+            return posts;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Loads a timeline: from the post store first when nothing is cached, then
+     * topped up upstream with since_id. When upstream fails, whatever is
+     * already known is served if {@code fallBack}.
+     */
+    private List<MastodonPost> load(String tag, Entry stale, boolean fallBack) throws IOException {
+        Integer pinnedPosts = pinned.get(tag);
+        int maxPosts = pinnedPosts != null ? pinnedPosts : properties.maxPostsPerTag();
+        // Pinned tags are refreshed less often, so each request asks for as much as the API gives
+        int pageSize = pinnedPosts != null ? MAX_PAGE_SIZE : properties.pageSize();
+        List<MastodonPost> known = stale != null
+                ? stale.posts()
+                : postStore.latestForTag(tag, maxPosts);
+        List<MastodonPost> posts;
+        if (known.isEmpty()) {
+            posts = mastodonClient.getTagTimeline(tag, pageSize);
+            postStore.append(posts, tag);
+            posts = List.copyOf(posts);
+        } else {
+            String sinceId = known.get(0).getId();
+            List<MastodonPost> fresh;
+            try {
+                fresh = mastodonClient.getTagTimeline(tag, pageSize, null, sinceId);
+            } catch (IOException e) {
+                if (!fallBack) {
+                    throw e;
+                }
+                log.warn("Serving #{} from known posts: {}", tag, e.getMessage());
+                return List.copyOf(known);
+            }
+            postStore.append(fresh, tag);
+            // A full page may leave a gap with the cached posts, start over
+            posts = fresh.size() >= pageSize ? List.copyOf(fresh) : merge(fresh, known, maxPosts);
+        }
+        return pinnedPosts != null ? fill(tag, posts, maxPosts) : posts;
+    }
+
+    /**
+     * Completes a pinned timeline with older posts, so that a view opening it
+     * has its first screens without asking upstream.
+     */
+    private List<MastodonPost> fill(String tag, List<MastodonPost> posts, int maxPosts) throws IOException {
+        if (posts.isEmpty() || posts.size() >= maxPosts) {
+            return posts;
+        }
+        var filled = new ArrayList<>(posts);
+        while (filled.size() < maxPosts) {
+            String maxId = filled.get(filled.size() - 1).getId();
+            var older = mastodonClient.getTagTimeline(tag, Math.min(MAX_PAGE_SIZE, maxPosts - filled.size()), maxId,
+                    null);
+            if (older.isEmpty()) {
+                break;
+            }
+            postStore.append(older, tag);
+            filled.addAll(older);
+        }
+        return merge(filled, List.of(), maxPosts);
+    }
+
+    private static List<MastodonPost> merge(List<MastodonPost> fresh, List<MastodonPost> cached, int max) {
+        var merged = new ArrayList<MastodonPost>(Math.min(max, fresh.size() + cached.size()));
+        var seen = new HashSet<String>();
+        for (var post : fresh) {
+            if (merged.size() < max && seen.add(post.getId())) {
+                merged.add(post);
+            }
+        }
+        for (var post : cached) {
+            if (merged.size() < max && seen.add(post.getId())) {
+                merged.add(post);
+            }
+        }
+        return List.copyOf(merged);
+    }
+
+    private Entry entry(String key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    private static String key(String tag) {
+        return tag.toLowerCase(Locale.ROOT);
+    }
+
+    private static List<MastodonPost> await(CompletableFuture<List<MastodonPost>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for timeline");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private record Entry(List<MastodonPost> posts, long loadedAt) {
+        boolean isStale(long now, long ttlNanos) {
+            return now - loadedAt > ttlNanos;
+        }
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size) {
+    }
+}
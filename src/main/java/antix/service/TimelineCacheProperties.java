@@ -0,0 +1,19 @@
+package antix.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the shared hashtag timeline cache, bound from
+ * {@code antix.timeline-cache.*} in application.yaml.
+ */
+@ConfigurationProperties("antix.timeline-cache")
+public record TimelineCacheProperties(
+        @DefaultValue("30s") Duration ttl,
+        @DefaultValue("500") int maxTags,
+        @DefaultValue("10") int pageSize,
+        @DefaultValue("40") int maxPostsPerTag,
+        @DefaultValue("3s") Duration fanOutTimeout) {
+}
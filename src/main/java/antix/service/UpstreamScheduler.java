@@ -0,0 +1,284 @@
+package antix.service;
+
+import antix.metrics.UpstreamMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.InterruptedIOException;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Admits every request to the Mastodon API against the rate limit the
+ * server reports in {@code X-RateLimit-Limit}, {@code -Remaining} and
+ * {@code -Reset}.
+ *
+ * Requests wait in one queue, by {@link Priority} then by arrival, and each
+ * spends a token of the remaining budget; the headers of every response
+ * correct the count. Lower priorities leave a reserve of the budget to the
+ * higher ones, so prefetches stop first when it runs low. A request that
+ * would have to wait longer than {@code maxWait} for its turn or for the
+ * reset fails at once with {@link RateLimitedException}, which is how
+ * background work is shed. Refused requests (429, 503) are retried with
+ * jittered exponential backoff.
+ *
+ * Until a response carries the headers, or when the server doesn't send
+ * them, nothing is held back.
+ */
+@Slf4j
+@Service
+public class UpstreamScheduler {
+    /**
+     * Highest first.
+     */
+    public enum Priority {
+        /** A hashtag the user asked for. */
+        INTERACTIVE,
+        /** The replies of the post the user selected. */
+        REPLIES,
+        /** Prefetches and refreshes nobody is waiting for. */
+        BACKGROUND;
+
+        public String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final ThreadLocal<Priority> PRIORITY = ThreadLocal.withInitial(() -> Priority.INTERACTIVE);
+    private static final long POLL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final RateLimitProperties properties;
+    private final UpstreamMetrics metrics;
+    // Not synchronized: waiters are virtual threads, which would pin their carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>();
+    private final int[] queued = new int[Priority.values().length];
+    private long sequence;
+    private int limit;
+    private int remaining;
+    // Epoch millis at which the server restores the budget, 0 when unknown
+    private long resetAt;
+
+    public UpstreamScheduler(RateLimitProperties properties, UpstreamMetrics metrics) {
+        this.properties = properties;
+        this.metrics = metrics;
+        this.limit = properties.defaultLimit();
+        this.remaining = limit;
+    }
+
+    /**
+     * Runs {@code work} with requests made by this thread, and the async
+     * calls it starts, at {@code priority}.
+     */
+    public static <T> T withPriority(Priority priority, Supplier<T> work) {
+        var previous = PRIORITY.get();
+        PRIORITY.set(priority);
+        try {
+            return work.get();
+        } finally {
+            PRIORITY.set(previous);
+        }
+    }
+
+    public static Priority currentPriority() {
+        return PRIORITY.get();
+    }
+
+    /**
+     * Waits until a request at the current thread's priority may be sent and
+     * spends a token for it.
+     *
+     * @throws RateLimitedException when the wait would exceed {@code maxWait}
+     */
+    public void acquire() throws InterruptedIOException, RateLimitedException {
+        var priority = PRIORITY.get();
+        long start = System.nanoTime();
+        long deadline = start + properties.maxWait().toNanos();
+        lock.lock();
+        try {
+            var waiter = new Waiter(priority, sequence++);
+            queue.add(waiter);
+            queued[priority.ordinal()]++;
+            try {
+                while (true) {
+                    refill();
+                    boolean affordable = resetAt == 0 || remaining > reserve(priority);
+                    if (affordable && queue.peek() == waiter) {
+                        if (resetAt != 0) {
+                            remaining--;
+                        }
+                        break;
+                    }
+                    long now = System.nanoTime();
+                    long untilReset = resetAt == 0 ? 0
+                            : TimeUnit.MILLISECONDS.toNanos(Math.max(0, resetAt - System.currentTimeMillis()));
+                    if (now >= deadline || (!affordable && now + untilReset > deadline)) {
+                        metrics.shed(priority.tag());
+                        throw new RateLimitedException("Mastodon rate limit reached, " + priority.tag()
+                                + " request not sent", Duration.ofNanos(untilReset));
+                    }
+                    long wait = Math.min(POLL_NANOS, deadline - now);
+                    if (!affordable && untilReset > 0) {
+                        wait = Math.min(wait, untilReset);
+                    }
+                    changed.awaitNanos(wait);
+                }
+            } finally {
+                queue.remove(waiter);
+                queued[priority.ordinal()]--;
+                // The next in line may be able to go now
+                changed.signalAll();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+        } finally {
+            lock.unlock();
+            metrics.scheduled(priority.tag(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Takes the rate limit headers of a response into account. A 429 empties
+     * the budget until the reset, or {@code Retry-After}.
+     */
+    public void update(int status, HttpHeaders headers) {
+        int headerLimit = (int) headers.firstValueAsLong("X-RateLimit-Limit").orElse(0);
+        long headerRemaining = headers.firstValueAsLong("X-RateLimit-Remaining").orElse(-1);
+        long headerReset = headers.firstValue("X-RateLimit-Reset").map(UpstreamScheduler::parseReset).orElse(0L);
+        long retryAfter = headers.firstValueAsLong("Retry-After").orElse(0);
+        lock.lock();
+        try {
+            if (headerLimit > 0) {
+                limit = headerLimit;
+            }
+            if (headerRemaining >= 0 && headerReset != 0) {
+                if (headerReset > resetAt) {
+                    // A new window
+                    resetAt = headerReset;
+                    remaining = (int) headerRemaining;
+                } else if (headerReset == resetAt) {
+                    // Responses of concurrent requests arrive in any order
+                    remaining = (int) Math.min(remaining, headerRemaining);
+                }
+            }
+            if (status == 429) {
+                remaining = 0;
+                long pause = retryAfter > 0 ? TimeUnit.SECONDS.toMillis(retryAfter)
+                        : properties.backoffBase().toMillis();
+                resetAt = Math.max(resetAt, System.currentTimeMillis() + pause);
+                log.warn("Mastodon rate limit reached, budget restored at {}", Instant.ofEpochMilli(resetAt));
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether a request answered with {@code status} is worth sending again
+     * after {@code attempt} retries.
+     */
+    public boolean shouldRetry(int status, int attempt) {
+        return (status == 429 || status == 503) && attempt < properties.maxRetries();
+    }
+
+    /**
+     * Sleeps before retry number {@code attempt} (from 0): exponential, with
+     * jitter so that refused requests don't all come back together.
+     */
+    public void backoff(int attempt) throws InterruptedIOException {
+        long backoff = Math.min(properties.backoffMax().toMillis(),
+                properties.backoffBase().toMillis() << Math.min(attempt, 16));
+        try {
+            Thread.sleep(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+
+    /**
+     * Time until the budget is restored, zero when it isn't used up.
+     */
+    public Duration untilReset() {
+        lock.lock();
+        try {
+            refill();
+            return resetAt == 0 || remaining > 0 ? Duration.ZERO
+                    : Duration.ofMillis(Math.max(0, resetAt - System.currentTimeMillis()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queued(Priority priority) {
+        lock.lock();
+        try {
+            return queued[priority.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Requests left before the reset, as far as known.
+     */
+    public int remaining() {
+        lock.lock();
+        try {
+            refill();
+            return remaining;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill() {
+        if (resetAt != 0 && System.currentTimeMillis() >= resetAt) {
+            remaining = limit;
+            resetAt = 0;
+        }
+    }
+
+    private int reserve(Priority priority) {
+        return switch (priority) {
+            case INTERACTIVE -> 0;
+            case REPLIES -> (int) Math.ceil(limit * properties.repliesReserve());
+            case BACKGROUND -> (int) Math.ceil(limit * properties.backgroundReserve());
+        };
+    }
+
+    /**
+     * Mastodon sends an ISO 8601 timestamp; epoch seconds are accepted too.
+     */
+    private static long parseReset(String value) {
+        try {
+            return Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+            } catch (NumberFormatException ignored) {
+                return 0;
+            }
+        }
+    }
+
+    private record Waiter(Priority priority, long sequence) implements Comparable<Waiter> {
+        @Override
+        public int compareTo(Waiter other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package antix.service;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Hands out one shared instance per distinct value, like
+ * {@link String#intern()} for any type with value equality. Entries are only
+ * weakly held, so a value nobody uses any more is garbage collected.
+ *
+ * Values must not be modified once interned.
+ */
+public class WeakInterner<T> {
+    private final Map<T, WeakReference<T>> pool = new WeakHashMap<>();
+
+    public synchronized T intern(T value) {
+        if (value == null) {
+            return null;
+        }
+        var existing = pool.get(value);
+        T shared = existing == null ? null : existing.get();
+        if (shared != null) {
+            return shared;
+        }
+        pool.put(value, new WeakReference<>(value));
+        return value;
+    }
+
+    public synchronized int size() {
+        return pool.size();
+    }
+}
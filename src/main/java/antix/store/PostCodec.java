@@ -0,0 +1,279 @@
+package antix.store;
+
+import antix.model.Account;
+import antix.model.MastodonPost;
+import antix.model.MediaAttachment;
+import antix.model.Tag;
+import antix.service.PostIngest;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of the parts of a {@link MastodonPost} the view
+ * uses. Timestamps are epoch millis, booleans are packed in one flags byte
+ * and the derived text computed at ingest is stored so decoding never has to
+ * parse HTML. Only what {@link PostIngest#compact} leaves of a post is
+ * stored: no raw HTML content, mentions, original media size, filter
+ * results, application or account counters; of the card, only whether there
+ * was one. Decoded posts are compacted too, so that they share accounts and
+ * tags with those already in memory.
+ */
+final class PostCodec {
+    static final byte VERSION = 1;
+
+    private static final int SENSITIVE = 1;
+    private static final int FAVOURITED = 1 << 1;
+    private static final int REBLOGGED = 1 << 2;
+    private static final int MUTED = 1 << 3;
+    private static final int BOOKMARKED = 1 << 4;
+    private static final int HAS_ACCOUNT = 1 << 5;
+    private static final int HAS_CARD = 1 << 6;
+    private static final int HAS_REBLOG = 1 << 7;
+
+    private PostCodec() {
+    }
+
+    static byte[] encode(MastodonPost post) {
+        var bytes = new ByteArrayOutputStream(1024);
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            write(out, post);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static MastodonPost decode(ByteBuffer buffer) throws IOException {
+        var in = new DataInputStream(new ByteBufferInputStream(buffer));
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported record version " + version);
+        }
+        // Shares accounts and tags with the posts already in memory
+        return PostIngest.compact(read(in));
+    }
+
+    private static void write(DataOutputStream out, MastodonPost post) throws IOException {
+        int flags = (post.isSensitive() ? SENSITIVE : 0)
+                | (post.isFavourited() ? FAVOURITED : 0)
+                | (post.isReblogged() ? REBLOGGED : 0)
+                | (post.isMuted() ? MUTED : 0)
+                | (post.isBookmarked() ? BOOKMARKED : 0)
+                | (post.getAccount() != null ? HAS_ACCOUNT : 0)
+                | (post.isHasCard() ? HAS_CARD : 0)
+                | (post.getReblog() != null ? HAS_REBLOG : 0);
+        out.writeByte(flags);
+        writeString(out, post.getId());
+        out.writeLong(post.getCreatedAtMillis());
+        out.writeLong(post.getEditedAtMillis());
+        writeString(out, post.getInReplyToId());
+        writeString(out, post.getInReplyToAccountId());
+        writeString(out, post.getSpoilerText());
+        writeString(out, post.getVisibility());
+        writeString(out, post.getLanguage());
+        writeString(out, post.getUri());
+        writeString(out, post.getUrl());
+        out.writeInt(post.getRepliesCount());
+        out.writeInt(post.getReblogsCount());
+        out.writeInt(post.getFavouritesCount());
+        writeString(out, post.getPlainText());
+        writeString(out, post.getSafeHtml());
+
+        if (post.getAccount() != null) {
+            var account = post.getAccount();
+            writeString(out, account.getId());
+            writeString(out, account.getUsername());
+            writeString(out, account.getAcct());
+            writeString(out, account.getDisplayName());
+            writeString(out, account.getUrl());
+            writeString(out, account.getAvatar());
+            out.writeBoolean(account.isBot());
+        }
+
+        var tags = nullToEmpty(post.getTags());
+        out.writeShort(tags.size());
+        for (var tag : tags) {
+            writeString(out, tag.getName());
+            writeString(out, tag.getUrl());
+        }
+
+        var media = nullToEmpty(post.getMediaAttachments());
+        out.writeShort(media.size());
+        for (var attachment : media) {
+            writeString(out, attachment.getId());
+            writeString(out, attachment.getType());
+            writeString(out, attachment.getUrl());
+            writeString(out, attachment.getPreviewUrl());
+            writeString(out, attachment.getDescription());
+            var meta = attachment.getMeta();
+            writeImage(out, meta == null ? null : meta.getSmall());
+        }
+
+        if (post.getReblog() != null) {
+            write(out, post.getReblog());
+        }
+    }
+
+    private static MastodonPost read(DataInputStream in) throws IOException {
+        var post = new MastodonPost();
+        int flags = in.readUnsignedByte();
+        post.setSensitive((flags & SENSITIVE) != 0);
+        post.setFavourited((flags & FAVOURITED) != 0);
+        post.setReblogged((flags & REBLOGGED) != 0);
+        post.setMuted((flags & MUTED) != 0);
+        post.setBookmarked((flags & BOOKMARKED) != 0);
+        post.setId(readString(in));
+        post.setCreatedAtMillis(in.readLong());
+        post.setEditedAtMillis(in.readLong());
+        post.setInReplyToId(readString(in));
+        post.setInReplyToAccountId(readString(in));
+        post.setSpoilerText(readString(in));
+        post.setVisibility(readString(in));
+        post.setLanguage(readString(in));
+        post.setUri(readString(in));
+        post.setUrl(readString(in));
+        post.setRepliesCount(in.readInt());
+        post.setReblogsCount(in.readInt());
+        post.setFavouritesCount(in.readInt());
+        post.setPlainText(readString(in));
+        post.setPreview(StringUtils.left(post.getPlainText(), PostIngest.PREVIEW_LENGTH));
+        post.setSafeHtml(readString(in));
+
+        if ((flags & HAS_ACCOUNT) != 0) {
+            var account = new Account();
+            account.setId(readString(in));
+            account.setUsername(readString(in));
+            account.setAcct(readString(in));
+            account.setDisplayName(readString(in));
+            account.setUrl(readString(in));
+            account.setAvatar(readString(in));
+            account.setBot(in.readBoolean());
+            post.setAccount(account);
+        }
+
+        int tagCount = in.readUnsignedShort();
+        var tags = new ArrayList<Tag>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            var tag = new Tag();
+            tag.setName(readString(in));
+            tag.setUrl(readString(in));
+            tags.add(tag);
+        }
+        post.setTags(tags);
+
+        int mediaCount = in.readUnsignedShort();
+        var media = new ArrayList<MediaAttachment>(mediaCount);
+        for (int i = 0; i < mediaCount; i++) {
+            var attachment = new MediaAttachment();
+            attachment.setId(readString(in));
+            attachment.setType(readString(in));
+            attachment.setUrl(readString(in));
+            attachment.setPreviewUrl(readString(in));
+            attachment.setDescription(readString(in));
+            var meta = new MediaAttachment.Meta();
+            meta.setSmall(readImage(in));
+            attachment.setMeta(meta);
+            media.add(attachment);
+        }
+        post.setMediaAttachments(media);
+
+        post.setHasCard((flags & HAS_CARD) != 0);
+
+        if ((flags & HAS_REBLOG) != 0) {
+            post.setReblog(read(in));
+        }
+        return post;
+    }
+
+    private static void writeImage(DataOutputStream out, MediaAttachment.Meta.Image image) throws IOException {
+        out.writeInt(image == null ? -1 : image.getWidth());
+        out.writeInt(image == null ? -1 : image.getHeight());
+    }
+
+    private static MediaAttachment.Meta.Image readImage(DataInputStream in) throws IOException {
+        int width = in.readInt();
+        int height = in.readInt();
+        if (width < 0) {
+            return null;
+        }
+        var image = new MediaAttachment.Meta.Image();
+        image.setWidth(width);
+        image.setHeight(height);
+        image.setAspect(height == 0 ? 0 : (double) width / height);
+        return image;
+    }
+
+    /**
+     * Length-prefixed UTF-8, -1 for null. Unlike writeUTF it has no 64 KB
+     * limit.
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads what {@link #writeString} wrote. A length past the end of the
+     * record, from a torn or corrupt one, fails the record rather than
+     * allocating it.
+     */
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("String of " + length + " bytes past the end of the record");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static <T> List<T> nullToEmpty(List<T> list) {
+        return list == null ? List.of() : list;
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
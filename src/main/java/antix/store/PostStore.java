@@ -0,0 +1,801 @@
+package antix.store;
+
+import antix.model.MastodonPost;
+import antix.service.PostIngestListener;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Embedded, append-only store of posts so that timelines survive restarts and
+ * can be browsed when mastodon.social is unreachable.
+ *
+ * Three files live in {@code antix.store.directory}, suffixed with the
+ * generation named in its {@code CURRENT} file (0 when there is none yet):
+ * <ul>
+ * <li>{@code posts.dat}: {@link PostCodec} records, appended one after the
+ * other and read through memory mappings of fixed 64 MB chunks, so that only
+ * the last, growing chunk is ever mapped again;</li>
+ * <li>{@code posts.idx}: fixed-size entries (status id, offset, length,
+ * version), the last entry for an id wins;</li>
+ * <li>{@code tags.idx}: (tag, status id) pairs.</li>
+ * </ul>
+ * On startup only the two index files are mapped and scanned; records are
+ * decoded on demand. A post is appended again only when its edit date or
+ * counters changed. Once the data file holds more than twice as many records
+ * as live posts, or more than {@code max-posts} posts, it is compacted into
+ * fresh files keeping the newest {@code max-posts} posts.
+ *
+ * Reads share a read lock; appends take the write lock. Compaction copies the
+ * files on a background thread while reads keep using the old ones, then
+ * replays what was appended meanwhile and swaps the files in under the write
+ * lock. It writes the next generation, and {@code CURRENT} is atomically
+ * replaced to switch to it, so that a crash or a failure leaves either the
+ * old files or the new ones in use, never a mix; files of other generations
+ * are deleted on startup.
+ */
+@Slf4j
+@Service
+public class PostStore {
+    private static final String DATA = "posts.dat";
+    private static final String IDS = "posts.idx";
+    private static final String TAGS = "tags.idx";
+    private static final String CURRENT = "CURRENT";
+    private static final Pattern GENERATION_FILE = Pattern.compile("(?:posts\\.dat|posts\\.idx|tags\\.idx)\\.(\\d+)");
+    private static final int ID_ENTRY_BYTES = Long.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final int CHUNK_BITS = 26;
+    private static final int CHUNK_BYTES = 1 << CHUNK_BITS;
+
+    private final PostStoreProperties properties;
+    private final ObjectProvider<PostIngestListener> ingestListeners;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("post-store-compaction").daemon().factory());
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    // Ids whose posts the ingest listeners already had in this process
+    private final Set<Long> announced = ConcurrentHashMap.newKeySet();
+    private Map<Long, Location> locations = new HashMap<>();
+    private Map<String, LongList> byTag = new HashMap<>();
+    private FileChannel data;
+    private FileChannel ids;
+    private FileChannel tags;
+    private long records;
+    private long generation;
+    // Set while a compaction is running
+    private Compaction compaction;
+
+    public PostStore(PostStoreProperties properties, ObjectProvider<PostIngestListener> ingestListeners) {
+        this.properties = properties;
+        this.ingestListeners = ingestListeners;
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!properties.enabled()) {
+            return;
+        }
+        Files.createDirectories(properties.directory());
+        lock.writeLock().lock();
+        try {
+            generation = readGeneration();
+            deleteOtherGenerations();
+            openFiles();
+            long started = System.nanoTime();
+            loadIndexes();
+            log.info("Post store opened with {} posts, {} tags in {} ms", locations.size(), byTag.size(),
+                    (System.nanoTime() - started) / 1_000_000);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        // A running compaction finds the store closed and gives up
+        compactor.shutdown();
+        lock.writeLock().lock();
+        try {
+            if (data != null) {
+                data.force(true);
+                closeFiles();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            // Once it has deleted its files, which a store opened next on the directory could use
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isEnabled() {
+        lock.readLock().lock();
+        try {
+            return data != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return locations.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores {@code posts}, indexing each under its own tags and under
+     * {@code tag} (the timeline they were fetched for), which may be null.
+     */
+    public void append(Collection<MastodonPost> posts, String tag) {
+        if (posts.isEmpty()) {
+            return;
+        }
+        String queried = tag == null ? null : tag.toLowerCase(Locale.ROOT);
+        lock.writeLock().lock();
+        try {
+            if (data == null) {
+                return;
+            }
+            for (var post : posts) {
+                Long id = numericId(post.getId());
+                if (id == null) {
+                    continue;
+                }
+                var tagNames = new HashSet<String>();
+                if (queried != null) {
+                    tagNames.add(queried);
+                }
+                if (post.getTags() != null) {
+                    post.getTags().forEach(t -> tagNames.add(t.getName().toLowerCase(Locale.ROOT)));
+                }
+                // Came from upstream, through the listeners already
+                announced.add(id);
+                int version = version(post);
+                var existing = locations.get(id);
+                if (existing == null || existing.version() != version) {
+                    writeRecord(id, PostCodec.encode(post), version);
+                }
+                for (var name : tagNames) {
+                    if (byTag.computeIfAbsent(name, k -> new LongList()).add(id)) {
+                        writeTag(name, id);
+                    }
+                }
+            }
+            compactIfNeeded();
+        } catch (IOException e) {
+            log.warn("Could not append to post store", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public MastodonPost get(String statusId) {
+        Long id = numericId(statusId);
+        if (id == null) {
+            return null;
+        }
+        MastodonPost post;
+        lock.readLock().lock();
+        try {
+            post = data == null ? null : read(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (post != null) {
+            announce(List.of(post));
+        }
+        return post;
+    }
+
+    /**
+     * Newest stored posts of {@code tag}, newest first.
+     */
+    public List<MastodonPost> latestForTag(String tag, int limit) {
+        return olderForTag(tag, null, limit);
+    }
+
+    /**
+     * Stored posts of {@code tag} older than {@code maxId} (all when null),
+     * newest first: the offline counterpart of a max_id page.
+     */
+    public List<MastodonPost> olderForTag(String tag, String maxId, int limit) {
+        long bound = maxId == null ? Long.MAX_VALUE : Objects.requireNonNullElse(numericId(maxId), Long.MAX_VALUE);
+        var result = new ArrayList<MastodonPost>();
+        lock.readLock().lock();
+        try {
+            var list = data == null ? null : byTag.get(tag.toLowerCase(Locale.ROOT));
+            if (list == null) {
+                return List.of();
+            }
+            for (int i = list.indexBelow(bound); i >= 0 && result.size() < limit; i--) {
+                var post = read(list.get(i));
+                if (post != null) {
+                    result.add(post);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        announce(result);
+        return result;
+    }
+
+    /**
+     * Tells the ingest listeners about the posts read back that they haven't
+     * had yet in this process, outside the store lock.
+     */
+    private void announce(List<MastodonPost> posts) {
+        for (var post : posts) {
+            Long id = numericId(post.getId());
+            if (id != null && announced.add(id)) {
+                ingestListeners.orderedStream().forEach(listener -> listener.onIngest(post));
+            }
+        }
+    }
+
+    /**
+     * Rewrites the files keeping the newest {@code max-posts} posts, one
+     * record each, and waits for it; joins the compaction already running if
+     * any.
+     */
+    public void compact() throws IOException {
+        Compaction running;
+        lock.writeLock().lock();
+        try {
+            if (data == null) {
+                return;
+            }
+            running = compaction != null ? compaction : startCompaction();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            running.done.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Called with the write lock held.
+     */
+    private void compactIfNeeded() {
+        if (compaction == null && (records > 2L * Math.max(locations.size(), 1_000)
+                || locations.size() > properties.maxPosts() * 11L / 10)) {
+            startCompaction();
+        }
+    }
+
+    /**
+     * Snapshots what to keep, under the write lock, and copies it in the
+     * background.
+     */
+    private Compaction startCompaction() {
+        long[] kept = locations.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        if (kept.length > properties.maxPosts()) {
+            kept = Arrays.copyOfRange(kept, kept.length - properties.maxPosts(), kept.length);
+        }
+        var keptLocations = new Location[kept.length];
+        for (int i = 0; i < kept.length; i++) {
+            keptLocations[i] = locations.get(kept[i]);
+        }
+        var tagIds = new HashMap<String, long[]>(byTag.size() * 2);
+        byTag.forEach((name, list) -> tagIds.put(name, list.toArray()));
+        var started = new Compaction(data, kept, keptLocations, tagIds);
+        try {
+            compactor.execute(() -> compact(started));
+            compaction = started;
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            started.done.complete(null);
+        }
+        return started;
+    }
+
+    private void compact(Compaction c) {
+        long next = generation + 1;
+        var newLocations = new HashMap<Long, Location>(c.kept.length * 2);
+        var newByTag = new HashMap<String, LongList>(c.tags.size() * 2);
+        FileChannel newData = null;
+        FileChannel newIds = null;
+        FileChannel newTags = null;
+        boolean locked = false;
+        boolean switched = false;
+        try {
+            newData = create(DATA, next);
+            newIds = create(IDS, next);
+            newTags = create(TAGS, next);
+            // Records don't move in the old file until the swap: no lock needed to copy them
+            for (int i = 0; i < c.kept.length; i++) {
+                copyRecord(c.source, c.kept[i], c.locations[i], newData, newIds, newLocations);
+            }
+            for (var tag : c.tags.entrySet()) {
+                var list = new LongList();
+                for (long id : tag.getValue()) {
+                    if (newLocations.containsKey(id)) {
+                        list.append(id);
+                        writeFully(newTags, tagEntry(tag.getKey(), id));
+                    }
+                }
+                if (list.size() > 0) {
+                    newByTag.put(tag.getKey(), list);
+                }
+            }
+            // Flushed before locking, so that only the replayed tail is left to flush under the lock
+            newData.force(true);
+            newIds.force(true);
+            newTags.force(true);
+
+            lock.writeLock().lock();
+            locked = true;
+            if (data != c.source) {
+                return;
+            }
+            // Replay what was appended during the copy
+            var revived = new ArrayList<Long>();
+            for (long id : c.appendedIds) {
+                if (!newLocations.containsKey(id)) {
+                    revived.add(id);
+                }
+                copyRecord(data, id, locations.get(id), newData, newIds, newLocations);
+            }
+            // Posts left out of the snapshot but stored again keep their tags
+            for (var tag : byTag.entrySet()) {
+                for (long id : revived) {
+                    if (tag.getValue().contains(id)
+                            && newByTag.computeIfAbsent(tag.getKey(), k -> new LongList()).add(id)) {
+                        writeFully(newTags, tagEntry(tag.getKey(), id));
+                    }
+                }
+            }
+            for (var entry : c.appendedTags) {
+                if (newLocations.containsKey(entry.id())
+                        && newByTag.computeIfAbsent(entry.tag(), k -> new LongList()).add(entry.id())) {
+                    writeFully(newTags, tagEntry(entry.tag(), entry.id()));
+                }
+            }
+            newData.force(true);
+            newIds.force(true);
+            newTags.force(true);
+
+            // Until this succeeds the old files stay in use, as on a restart
+            writeGeneration(next);
+            switched = true;
+            var old = List.of(data, ids, tags);
+            data = newData;
+            ids = newIds;
+            tags = newTags;
+            chunks.clear();
+            generation = next;
+            locations = newLocations;
+            byTag = newByTag;
+            records = c.kept.length + c.appendedIds.size();
+            announced.removeIf(id -> !newLocations.containsKey(id));
+            for (var channel : old) {
+                closeQuietly(channel);
+            }
+            deleteGeneration(next - 1);
+            log.info("Post store compacted to {} posts", locations.size());
+            c.done.complete(null);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Post store compaction failed", e);
+            c.done.completeExceptionally(e);
+        } finally {
+            if (!locked) {
+                lock.writeLock().lock();
+            }
+            // Before the next compaction may create the same files again
+            if (!switched) {
+                for (var channel : Arrays.asList(newData, newIds, newTags)) {
+                    closeQuietly(channel);
+                }
+                deleteGeneration(next);
+            }
+            compaction = null;
+            lock.writeLock().unlock();
+            c.done.complete(null);
+        }
+    }
+
+    private void copyRecord(FileChannel source, long id, Location location, FileChannel newData,
+            FileChannel newIds, Map<Long, Location> newLocations) throws IOException {
+        long offset = newData.position();
+        writeFully(newData, record(source, location));
+        writeFully(newIds, idEntry(id, offset, location.length(), location.version()));
+        newLocations.put(id, new Location(offset, location.length(), location.version()));
+    }
+
+    private void openFiles() throws IOException {
+        data = FileChannel.open(file(DATA, generation), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        ids = FileChannel.open(file(IDS, generation), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        tags = FileChannel.open(file(TAGS, generation), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        chunks.clear();
+    }
+
+    private FileChannel create(String name, long generation) throws IOException {
+        return FileChannel.open(file(name, generation), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private Path file(String name, long generation) {
+        return properties.directory().resolve(name + "." + generation);
+    }
+
+    private long readGeneration() throws IOException {
+        Path current = properties.directory().resolve(CURRENT);
+        if (!Files.exists(current)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(Files.readString(current, StandardCharsets.US_ASCII).trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Unreadable " + current, e);
+        }
+    }
+
+    /**
+     * Points {@code CURRENT} at {@code next}: written aside, flushed, then
+     * renamed over the old one in one atomic step.
+     */
+    private void writeGeneration(long next) throws IOException {
+        Path dir = properties.directory();
+        Path written = dir.resolve(CURRENT + ".tmp");
+        try (var channel = FileChannel.open(written, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, ByteBuffer.wrap((next + "\n").getBytes(StandardCharsets.US_ASCII)));
+            channel.force(true);
+        }
+        Files.move(written, dir.resolve(CURRENT), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes what a compaction interrupted by a crash left behind: the files
+     * of the generation it was writing, or of the one it replaced.
+     */
+    private void deleteOtherGenerations() throws IOException {
+        Files.deleteIfExists(properties.directory().resolve(CURRENT + ".tmp"));
+        try (var listing = Files.list(properties.directory())) {
+            for (var path : listing.toList()) {
+                var matcher = GENERATION_FILE.matcher(path.getFileName().toString());
+                if (matcher.matches() && Long.parseLong(matcher.group(1)) != generation) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private void deleteGeneration(long generation) {
+        for (var name : List.of(DATA, IDS, TAGS)) {
+            try {
+                Files.deleteIfExists(file(name, generation));
+            } catch (IOException e) {
+                log.warn("Could not delete {}", file(name, generation), e);
+            }
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Could not close a post store file", e);
+        }
+    }
+
+    private void closeFiles() throws IOException {
+        data.close();
+        ids.close();
+        tags.close();
+        data = null;
+        chunks.clear();
+    }
+
+    /**
+     * Rebuilds the in-memory maps from the mapped index files. Entries whose
+     * record lies past the end of the data file (interrupted write) are
+     * ignored and the files are trimmed back to their last complete entry.
+     */
+    private void loadIndexes() throws IOException {
+        locations.clear();
+        byTag.clear();
+        records = 0;
+        long dataSize = data.size();
+        long idCount = ids.size() / ID_ENTRY_BYTES;
+        if (idCount > 0) {
+            var map = ids.map(FileChannel.MapMode.READ_ONLY, 0, idCount * ID_ENTRY_BYTES).order(ByteOrder.BIG_ENDIAN);
+            while (map.remaining() >= ID_ENTRY_BYTES) {
+                long id = map.getLong();
+                long offset = map.getLong();
+                int length = map.getInt();
+                int version = map.getInt();
+                if (offset + length <= dataSize) {
+                    locations.put(id, new Location(offset, length, version));
+                    records++;
+                }
+            }
+        }
+        ids.truncate(idCount * ID_ENTRY_BYTES);
+        ids.position(ids.size());
+        data.position(dataSize);
+
+        long tagsSize = tags.size();
+        long valid = 0;
+        if (tagsSize > 0) {
+            var map = tags.map(FileChannel.MapMode.READ_ONLY, 0, tagsSize);
+            while (map.remaining() >= Short.BYTES) {
+                int length = map.getShort() & 0xffff;
+                if (map.remaining() < length + Long.BYTES) {
+                    break;
+                }
+                byte[] name = new byte[length];
+                map.get(name);
+                long id = map.getLong();
+                if (locations.containsKey(id)) {
+                    byTag.computeIfAbsent(new String(name, StandardCharsets.UTF_8), k -> new LongList()).append(id);
+                }
+                valid = map.position();
+            }
+        }
+        byTag.values().forEach(LongList::sortDistinct);
+        tags.truncate(valid);
+        tags.position(valid);
+    }
+
+    private void writeRecord(long id, byte[] record, int version) throws IOException {
+        long offset = data.size();
+        writeFully(data, ByteBuffer.wrap(record));
+        writeFully(ids, idEntry(id, offset, record.length, version));
+        locations.put(id, new Location(offset, record.length, version));
+        records++;
+        if (compaction != null) {
+            compaction.appendedIds.add(id);
+        }
+    }
+
+    private void writeTag(String name, long id) throws IOException {
+        writeFully(tags, tagEntry(name, id));
+        if (compaction != null) {
+            compaction.appendedTags.add(new TagEntry(name, id));
+        }
+    }
+
+    private MastodonPost read(long id) {
+        var location = locations.get(id);
+        if (location == null) {
+            return null;
+        }
+        try {
+            return PostCodec.decode(record(data, location));
+        } catch (IOException e) {
+            log.warn("Unreadable record for status {}", id, e);
+            return null;
+        }
+    }
+
+    /**
+     * Bytes of a record, copied out when it straddles two chunks.
+     */
+    private ByteBuffer record(FileChannel source, Location location) throws IOException {
+        int chunk = (int) (location.offset() >>> CHUNK_BITS);
+        int start = (int) (location.offset() & (CHUNK_BYTES - 1));
+        int length = location.length();
+        if (start + length <= CHUNK_BYTES) {
+            return chunk(source, chunk, start + length).slice(start, length);
+        }
+        var bytes = new byte[length];
+        int head = CHUNK_BYTES - start;
+        chunk(source, chunk, CHUNK_BYTES).get(start, bytes, 0, head);
+        chunk(source, chunk + 1, length - head).get(0, bytes, head, length - head);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Mapping of a chunk covering at least its first {@code needed} bytes.
+     * Full chunks are mapped once; the last one again as the file grows.
+     * Readers share the read lock, so the chunk list has its own.
+     */
+    private MappedByteBuffer chunk(FileChannel source, int index, int needed) throws IOException {
+        synchronized (chunks) {
+            return mapChunk(source, index, needed);
+        }
+    }
+
+    private MappedByteBuffer mapChunk(FileChannel source, int index, int needed) throws IOException {
+        while (chunks.size() <= index) {
+            chunks.add(null);
+        }
+        var map = chunks.get(index);
+        if (map == null || map.capacity() < needed) {
+            long position = (long) index << CHUNK_BITS;
+            long size = Math.min(CHUNK_BYTES, source.size() - position);
+            if (size < needed) {
+                throw new EOFException("Record past the end of " + DATA);
+            }
+            map = source.map(FileChannel.MapMode.READ_ONLY, position, size);
+            chunks.set(index, map);
+        }
+        return map;
+    }
+
+    private static ByteBuffer idEntry(long id, long offset, int length, int version) {
+        return ByteBuffer.allocate(ID_ENTRY_BYTES).putLong(id).putLong(offset).putInt(length).putInt(version).flip();
+    }
+
+    private static ByteBuffer tagEntry(String name, long id) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Short.BYTES + bytes.length + Long.BYTES)
+                .putShort((short) bytes.length).put(bytes).putLong(id).flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int version(MastodonPost post) {
+        return Objects.hash(post.getEditedAtMillis(), post.getRepliesCount(), post.getReblogsCount(),
+                post.getFavouritesCount());
+    }
+
+    private static Long numericId(String id) {
+        if (id == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private record Location(long offset, int length, int version) {
+    }
+
+    private record TagEntry(String tag, long id) {
+    }
+
+    /**
+     * A compaction in progress: what it copies, and what is appended while it
+     * copies.
+     */
+    private static final class Compaction {
+        final FileChannel source;
+        final long[] kept;
+        final Location[] locations;
+        final Map<String, long[]> tags;
+        final Set<Long> appendedIds = new LinkedHashSet<>();
+        final List<TagEntry> appendedTags = new ArrayList<>();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Compaction(FileChannel source, long[] kept, Location[] locations, Map<String, long[]> tags) {
+            this.source = source;
+            this.kept = kept;
+            this.locations = locations;
+            this.tags = tags;
+        }
+    }
+
+    /**
+     * Sorted set of primitive longs, in a growable array.
+     */
+    private static final class LongList {
+        private long[] values = new long[8];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        long get(int index) {
+            return values[index];
+        }
+
+        boolean contains(long value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        /**
+         * Inserts {@code value} in order; false when it is already there.
+         * Newer ids, the common case, go straight to the end.
+         */
+        boolean add(long value) {
+            int index = size == 0 || values[size - 1] < value ? -size - 1 : Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            grow();
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = value;
+            size++;
+            return true;
+        }
+
+        /**
+         * Appends without keeping the order, for bulk loads followed by
+         * {@link #sortDistinct}.
+         */
+        void append(long value) {
+            grow();
+            values[size++] = value;
+        }
+
+        void sortDistinct() {
+            Arrays.sort(values, 0, size);
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (distinct == 0 || values[i] != values[distinct - 1]) {
+                    values[distinct++] = values[i];
+                }
+            }
+            size = distinct;
+        }
+
+        /**
+         * Index of the greatest value below {@code bound}, -1 when none.
+         */
+        int indexBelow(long bound) {
+            int index = Arrays.binarySearch(values, 0, size, bound);
+            return index >= 0 ? index - 1 : -index - 2;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        private void grow() {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+        }
+    }
+}
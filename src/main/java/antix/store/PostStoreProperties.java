@@ -0,0 +1,17 @@
+package antix.store;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of the on-disk post store, bound from {@code antix.store.*} in
+ * application.yaml.
+ */
+@ConfigurationProperties("antix.store")
+public record PostStoreProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("data/store") Path directory,
+        @DefaultValue("100000") int maxPosts) {
+}
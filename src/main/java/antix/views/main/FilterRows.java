@@ -0,0 +1,62 @@
+package antix.views.main;
+
+import antix.model.MastodonPost;
+import antix.search.FilterIndex;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Rows of a {@link FilterIndex.Result}, read from the index page by page
+ * rather than copied into a list. Positions of the rows fetched so far are
+ * remembered for {@link #indexOf}.
+ *
+ * Not thread-safe: it is only used under the Vaadin session lock.
+ */
+public class FilterRows implements PostRows {
+    private final FilterIndex.Result result;
+    private final Map<String, Integer> positions = new HashMap<>();
+    private volatile int held;
+
+    public FilterRows(FilterIndex.Result result) {
+        this.result = result;
+    }
+
+    public int size() {
+        return result.matches();
+    }
+
+    @Override
+    public List<MastodonPost> fetch(int offset, int limit) {
+        var page = result.fetch(offset, limit);
+        for (int i = 0; i < page.size(); i++) {
+            positions.putIfAbsent(page.get(i).getId(), offset + i);
+        }
+        held = positions.size();
+        return page;
+    }
+
+    @Override
+    public Optional<MastodonPost> peek(int index) {
+        if (index < 0 || index >= result.matches()) {
+            return Optional.empty();
+        }
+        return fetch(index, 1).stream().findFirst();
+    }
+
+    @Override
+    public int indexOf(MastodonPost post) {
+        return positions.getOrDefault(post.getId(), -1);
+    }
+
+    @Override
+    public int heldCount() {
+        return held;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,62 @@
+package antix.views.main;
+
+import antix.model.MastodonPost;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Rows from a list that is already complete, such as search results.
+ */
+public class ListRows implements PostRows {
+    private final List<MastodonPost> posts;
+    private final Map<String, Integer> positions;
+
+    public ListRows(List<MastodonPost> posts) {
+        this.posts = List.copyOf(posts);
+        this.positions = new HashMap<>(posts.size() * 2);
+        for (int i = 0; i < this.posts.size(); i++) {
+            positions.putIfAbsent(this.posts.get(i).getId(), i);
+        }
+    }
+
+    public List<MastodonPost> getPosts() {
+        return posts;
+    }
+
+    public int size() {
+        return posts.size();
+    }
+
+    @Override
+    public List<MastodonPost> fetch(int offset, int limit) {
+        if (offset >= posts.size()) {
+            return List.of();
+        }
+        return posts.subList(offset, (int) Math.min((long) offset + limit, posts.size()));
+    }
+
+    @Override
+    public Optional<MastodonPost> peek(int index) {
+        if (index < 0 || index >= posts.size()) {
+            return Optional.empty();
+        }
+        return Optional.of(posts.get(index));
+    }
+
+    @Override
+    public int indexOf(MastodonPost post) {
+        return positions.getOrDefault(post.getId(), -1);
+    }
+
+    @Override
+    public int heldCount() {
+        return posts.size();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,196 @@
+package antix.views.main;
+
+import antix.model.MastodonPost;
+import antix.service.HashtagStreamHub;
+import antix.service.StreamEvent;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+import com.vaadin.flow.component.grid.Grid;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rows of a hashtag followed live through the streaming API, newest first.
+ *
+ * Stream events are queued as they arrive and applied to the grid in one
+ * batch every {@link #FLUSH_INTERVAL_MILLIS}: new posts refresh the viewport
+ * once, edits and deletions refresh only their own row. A deleted post keeps
+ * its row (as a tombstone) so line numbers don't move under the user.
+ *
+ * Only the newest {@link #MAX_POSTS} posts are kept: the oldest are dropped,
+ * a quarter of the window at a time, from the end of the grid.
+ *
+ * Apart from {@link #onEvent}, only used under the Vaadin session lock.
+ */
+@Slf4j
+public class LiveTimeline implements PostRows {
+    static final long FLUSH_INTERVAL_MILLIS = 250;
+    static final int MAX_POSTS = 2_000;
+
+    private static final Executor FLUSH_DELAY =
+            CompletableFuture.delayedExecutor(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+    private final Grid<MastodonPost> grid;
+    private final UI ui;
+    // Oldest first so that new posts are appended: row p is posts.get(size - 1 - p)
+    private final List<MastodonPost> posts = new ArrayList<>();
+    // Slot s of a post is posts.get(s - dropped), so that slots survive dropping the oldest
+    private final Map<String, Integer> slots = new HashMap<>();
+    private int dropped;
+    private final ConcurrentLinkedQueue<StreamEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AutoCloseable subscription;
+    // A flush scheduled before close() still runs, it must not touch the grid
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public LiveTimeline(String tag, List<MastodonPost> initial, HashtagStreamHub hub, Grid<MastodonPost> grid,
+            UI ui) {
+        this.grid = grid;
+        this.ui = ui;
+        for (int i = initial.size() - 1; i >= 0; i--) {
+            append(initial.get(i));
+        }
+        trim();
+        this.subscription = hub.subscribe(tag, this::onEvent);
+    }
+
+    public int size() {
+        return posts.size();
+    }
+
+    @Override
+    public List<MastodonPost> fetch(int offset, int limit) {
+        int end = (int) Math.min((long) offset + limit, posts.size());
+        var result = new ArrayList<MastodonPost>(Math.max(0, end - offset));
+        for (int row = offset; row < end; row++) {
+            result.add(posts.get(posts.size() - 1 - row));
+        }
+        return result;
+    }
+
+    @Override
+    public Optional<MastodonPost> peek(int index) {
+        if (index < 0 || index >= posts.size()) {
+            return Optional.empty();
+        }
+        return Optional.of(posts.get(posts.size() - 1 - index));
+    }
+
+    @Override
+    public int indexOf(MastodonPost post) {
+        Integer slot = slots.get(post.getId());
+        return slot == null ? -1 : posts.size() - 1 - (slot - dropped);
+    }
+
+    @Override
+    public int heldCount() {
+        return posts.size();
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        pending.clear();
+        try {
+            subscription.close();
+        } catch (Exception e) {
+            log.warn("Could not unsubscribe live timeline", e);
+        }
+    }
+
+    /**
+     * Called on the stream's thread; queues the event and schedules a flush.
+     */
+    private void onEvent(StreamEvent event) {
+        if (closed.get()) {
+            return;
+        }
+        pending.add(event);
+        if (flushScheduled.compareAndSet(false, true)) {
+            FLUSH_DELAY.execute(() -> {
+                try {
+                    ui.access(this::flush);
+                } catch (UIDetachedException e) {
+                    close();
+                }
+            });
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        if (closed.get()) {
+            // The grid may already show another timeline
+            pending.clear();
+            return;
+        }
+        boolean inserted = false;
+        var changed = new ArrayList<MastodonPost>();
+        StreamEvent event;
+        while ((event = pending.poll()) != null) {
+            Integer slot = slots.get(event.statusId());
+            switch (event.type()) {
+                case UPDATE -> {
+                    if (slot == null) {
+                        append(event.post());
+                        inserted = true;
+                    } else {
+                        posts.set(slot - dropped, event.post());
+                        changed.add(event.post());
+                    }
+                }
+                case STATUS_UPDATE -> {
+                    if (slot != null) {
+                        posts.set(slot - dropped, event.post());
+                        changed.add(event.post());
+                    }
+                }
+                case DELETE -> {
+                    if (slot != null) {
+                        var tombstone = Tombstones.of(posts.get(slot - dropped));
+                        posts.set(slot - dropped, tombstone);
+                        changed.add(tombstone);
+                    }
+                }
+            }
+        }
+        if (inserted) {
+            trim();
+            grid.getDataProvider().refreshAll();
+        } else {
+            changed.forEach(post -> grid.getDataProvider().refreshItem(post));
+        }
+    }
+
+    private void append(MastodonPost post) {
+        if (slots.putIfAbsent(post.getId(), dropped + posts.size()) == null) {
+            posts.add(post);
+        }
+    }
+
+    /**
+     * Drops the oldest posts and their slots once a quarter more than
+     * {@link #MAX_POSTS} are held, so that shifting the list is rare.
+     */
+    private void trim() {
+        if (posts.size() <= MAX_POSTS + MAX_POSTS / 4) {
+            return;
+        }
+        var oldest = posts.subList(0, posts.size() - MAX_POSTS);
+        oldest.forEach(post -> slots.remove(post.getId()));
+        dropped += oldest.size();
+        oldest.clear();
+    }
+}
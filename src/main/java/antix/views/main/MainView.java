@@ -1,41 +1,95 @@
 package antix.views.main;
 
+import antix.media.MediaCache;
+import antix.metrics.SessionMetrics;
 import antix.model.MastodonPost;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import antix.model.MediaAttachment;
+import antix.model.StatusContext;
+import antix.model.Tag;
+import antix.search.FilterIndex;
+import antix.search.SearchIndex;
+import antix.service.ContextCache;
+import antix.service.FollowedTags;
+import antix.service.HashtagStreamHub;
+import antix.service.MastodonClient;
+import antix.service.RateLimitedException;
+import antix.service.TimelineCache;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.grid.Grid;
 import com.vaadin.flow.component.grid.GridVariant;
+import com.vaadin.flow.component.html.Anchor;
 import com.vaadin.flow.component.html.Div;
-import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.component.html.Image;
 import com.vaadin.flow.component.orderedlayout.FlexComponent;
 import com.vaadin.flow.component.orderedlayout.FlexLayout;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.component.textfield.TextField;
+import com.vaadin.flow.component.treegrid.TreeGrid;
 import com.vaadin.flow.data.provider.Query;
-import com.vaadin.flow.data.renderer.ComponentRenderer;
+import com.vaadin.flow.data.renderer.LitRenderer;
 import com.vaadin.flow.data.selection.SelectionEvent;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.http.client.utils.URIBuilder;
-import org.jsoup.Jsoup;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URISyntaxException;
-import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
 
+@Slf4j
 @PageTitle("main")
 @Route("")
 public class MainView extends VerticalLayout {
-    public MainView() {
+    // Nombre de tags fusionnés au plus par "h tag1 tag2 ..."
+    private static final int MAX_TAGS = 10;
+    // Tags affichés en badges dans la grille, les autres sont comptés
+    private static final int SHOWN_TAGS = 3;
+
+    private final MastodonClient mastodonClient;
+    private final TimelineCache timelineCache;
+    private final ContextCache contextCache;
+    private final HashtagStreamHub hashtagStreamHub;
+    private final SearchIndex searchIndex;
+    private final FilterIndex filterIndex;
+    private final SessionMetrics sessionMetrics;
+    private final MediaCache mediaCache;
+    private final FollowedTags followedTags;
+    private AutoCloseable metricsRegistration;
+    private CompletableFuture<StatusContext> pendingReplies;
+    private PostRows rows;
+    private MastodonPost openDetails;
+    // Tags de la timeline affichée, que "filter" restreint
+    private List<String> shownTags = List.of();
+
+    public MainView(MastodonClient mastodonClient, TimelineCache timelineCache, ContextCache contextCache,
+            HashtagStreamHub hashtagStreamHub, SearchIndex searchIndex, FilterIndex filterIndex,
+            SessionMetrics sessionMetrics, MediaCache mediaCache, FollowedTags followedTags) {
+        this.mastodonClient = mastodonClient;
+        this.timelineCache = timelineCache;
+        this.contextCache = contextCache;
+        this.hashtagStreamHub = hashtagStreamHub;
+        this.searchIndex = searchIndex;
+        this.filterIndex = filterIndex;
+        this.sessionMetrics = sessionMetrics;
+        this.mediaCache = mediaCache;
+        this.followedTags = followedTags;
+        // Compte la vue et les posts qu'elle garde en mémoire tant qu'elle est ouverte
+        addAttachListener(event -> metricsRegistration = sessionMetrics.register(() -> {
+            var current = rows;
+            return current == null ? 0 : current.heldCount();
+        }));
+        // Libère le streaming et les préchargements quand la vue est fermée
+        addDetachListener(event -> {
+            closeRows();
+            closeMetricsRegistration();
+        });
         setSizeFull();
         setAlignItems(FlexComponent.Alignment.CENTER);
         var grid = new Grid<>(MastodonPost.class, false);
@@ -45,12 +99,13 @@ public class MainView extends VerticalLayout {
         var contentDiv = new Div();
         contentDiv.setWidthFull();
 
-        //addLineNumberColumn(grid);
-       // addTagsColumn(grid);
+        addLineNumberColumn(grid);
+        addTagsColumn(grid);
         addRepliesColumn(grid);
         addContentColumn(grid);
         
-        grid.setItemDetailsRenderer(new ComponentRenderer<>(post -> new Div(Jsoup.parse(post.getContent()).text())));
+        grid.setItemDetailsRenderer(LitRenderer.<MastodonPost>of("<div>${item.text}</div>")
+                .withProperty("text", MastodonPost::getPlainText));
         grid.addSelectionListener(event -> selectItemListener(grid, contentDiv, event));
         grid.setDetailsVisibleOnClick(false);
 
@@ -62,42 +117,79 @@ public class MainView extends VerticalLayout {
                 return;
             }
             String text = v.getValue().trim();
-            // if (text.startsWith("goto ")) {
-            //     closeAll(grid);
-            //     String id = text.substring(3).trim();
-            //     if (!id.isEmpty()) {
-            //         var post = findPostById(grid, Integer.parseInt(id));
-            //         grid.setDetailsVisible(post, true);
-            //     }
-            // } else
-             if (text.startsWith("hashtag ") || text.startsWith("h ")) {
-                String tag = text.substring(1).trim();
-                grid.setItems(fetchPostsFromTag(tag));
-                grid.getDataProvider().fetch(new Query<>()).findFirst().ifPresent(firstItem -> {
-                    grid.select(firstItem);
-                });
-            } else if (text.equals("next") || text.equals("n")) {
-                // Sélectionne la ligne suivante
-                MastodonPost currentSelection = grid.getSelectedItems().stream().findFirst().orElse(null);
-                List<MastodonPost> items = grid.getDataProvider().fetch(new Query<>()).collect(Collectors.toList());
-                if (currentSelection != null) {
-                    int currentIndex = items.indexOf(currentSelection);
-                    if (currentIndex < items.size() - 1) {
-                        grid.select(items.get(currentIndex + 1));
+            prompt.setHelperText(null);
+            try {
+                if (text.startsWith("goto ") || text.startsWith("g ")) {
+                    // Sélectionne la ligne demandée (numérotée à partir de 1)
+                    String line = text.substring(text.indexOf(' ') + 1).trim();
+                    if (StringUtils.isNumeric(line) && line.length() < 10) {
+                        selectLine(grid, Integer.parseInt(line) - 1);
                     }
-                } else if (!items.isEmpty()) {
-                    grid.select(items.get(0));
-                }
-            } else if (text.equals("previous") || text.equals("p")) {
-                // Sélectionne la ligne précédente
-                MastodonPost currentSelection = grid.getSelectedItems().stream().findFirst().orElse(null);
-                List<MastodonPost> items = grid.getDataProvider().fetch(new Query<>()).collect(Collectors.toList());
-                if (currentSelection != null) {
-                    int currentIndex = items.indexOf(currentSelection);
-                    if (currentIndex > 0) {
-                        grid.select(items.get(currentIndex - 1));
+                } else if (text.startsWith("hashtag ") || text.startsWith("h ")) {
+                    // Un ou plusieurs tags : "h java kotlin" fusionne leurs timelines
+                    var tags = parseTags(text.substring(text.indexOf(' ') + 1));
+                    if (tags.size() > 1) {
+                        showTags(grid, tags, prompt);
+                    } else {
+                        showTag(grid, tags.isEmpty() ? "" : tags.get(0));
+                    }
+                    rows.get(0).ifPresent(firstItem -> {
+                        grid.select(firstItem);
+                    });
+                    if (tags.size() == 1) {
+                        showStaleness(prompt, tags.get(0));
                     }
+                } else if (text.startsWith("live ")) {
+                    // Suit le tag en direct : les nouveaux posts arrivent en haut
+                    String tag = text.substring(5).trim();
+                    showLive(grid, tag);
+                    rows.get(0).ifPresent(grid::select);
+                } else if (text.startsWith("search ")) {
+                    // Cherche dans les posts déjà reçus, sans appel à l'API
+                    var result = searchIndex.search(text.substring(7).trim());
+                    showList(grid, result.posts());
+                    prompt.setHelperText(result.matches() + " résultat(s) en "
+                            + result.nanos() / 1_000 + " µs");
+                    rows.get(0).ifPresent(grid::select);
+                } else if (text.equals("filter") || text.startsWith("filter ")) {
+                    // Restreint la timeline affichée par attributs, via les bitmaps de l'index
+                    try {
+                        long started = System.nanoTime();
+                        var result = filterIndex.filter(text.substring(6).trim(), shownTags);
+                        showFiltered(grid, result);
+                        // Le tri par date se fait à la première ligne lue : il est compté
+                        rows.get(0).ifPresent(grid::select);
+                        prompt.setHelperText(result.matches() + " post(s) en "
+                                + (System.nanoTime() - started) / 1_000 + " µs");
+                    } catch (IllegalArgumentException e) {
+                        prompt.setHelperText(e.getMessage());
+                    }
+                } else if (text.equals("next") || text.equals("n")) {
+                    // Sélectionne la ligne suivante (charge la page suivante si besoin)
+                    MastodonPost currentSelection = grid.getSelectedItems().stream().findFirst().orElse(null);
+                    if (currentSelection != null) {
+                        selectLine(grid, rows.indexOf(currentSelection) + 1);
+                    } else {
+                        selectLine(grid, 0);
+                    }
+                } else if (text.equals("previous") || text.equals("p")) {
+                    // Sélectionne la ligne précédente
+                    MastodonPost currentSelection = grid.getSelectedItems().stream().findFirst().orElse(null);
+                    if (currentSelection != null) {
+                        int currentIndex = rows.indexOf(currentSelection);
+                        if (currentIndex > 0) {
+                            selectLine(grid, currentIndex - 1);
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Limite de requêtes Mastodon atteinte : on le dit au lieu de planter la vue
+                var limited = RateLimitedException.find(e);
+                if (limited == null) {
+                    throw e;
                 }
+                prompt.setHelperText("Trop de requêtes vers Mastodon, réessayez dans "
+                        + Math.max(1, limited.getRetryAfter().toSeconds()) + " s");
             }
             internalChange.set(true);
             prompt.setValue("");
@@ -135,41 +227,90 @@ public class MainView extends VerticalLayout {
         setFlexGrow(0, promptContainer);
     }
 
+    /**
+     * Vignettes chargées seulement quand elles deviennent visibles ; la place
+     * est réservée d'après les dimensions connues (meta.small) pour que le
+     * texte ne saute pas à leur arrivée.
+     */
+    private FlexLayout thumbnails(List<MediaAttachment> media) {
+        var layout = new FlexLayout();
+        layout.setFlexWrap(FlexLayout.FlexWrap.WRAP);
+        for (var attachment : media) {
+            String src = mediaCache.thumbnailPath(attachment);
+            if (src == null) {
+                continue;
+            }
+            var image = new Image(src, StringUtils.defaultString(attachment.getDescription()));
+            image.getElement().setAttribute("loading", "lazy");
+            image.getElement().setAttribute("decoding", "async");
+            var small = attachment.getMeta() == null ? null : attachment.getMeta().getSmall();
+            if (small != null && small.getWidth() > 0 && small.getHeight() > 0) {
+                image.getElement().setAttribute("width", String.valueOf(small.getWidth()));
+                image.getElement().setAttribute("height", String.valueOf(small.getHeight()));
+            }
+            image.setMaxWidth("100%");
+            image.getStyle().set("height", "auto");
+            image.getStyle().set("margin", "2px");
+            // Le média complet reste sur son serveur, ouvert seulement au clic
+            var link = new Anchor(attachment.getUrl(), image);
+            link.setTarget("_blank");
+            layout.add(link);
+        }
+        return layout;
+    }
+
+    /**
+     * Fil des réponses : seules les réponses directes sont affichées, les
+     * branches s'ouvrent au clic. Les lignes sont rendues dans le navigateur
+     * et seules celles visibles sont envoyées, donc le nombre de composants
+     * côté serveur ne dépend pas du nombre de réponses.
+     */
+    private TreeGrid<MastodonPost> replyTreeGrid(ReplyTree tree) {
+        var replies = new TreeGrid<MastodonPost>();
+        replies.addThemeVariants(GridVariant.LUMO_WRAP_CELL_CONTENT, GridVariant.LUMO_NO_BORDER);
+        replies.setWidthFull();
+        replies.setHeight("60vh");
+        replies.setDataProvider(tree.dataProvider());
+        replies.addColumn(LitRenderer.<MastodonPost>of("""
+                <vaadin-grid-tree-toggle @click=${toggle} .leaf=${!item.children}
+                    .expanded=${model.expanded} .level=${model.level}>
+                  <div><b>${item.author}</b><div .innerHTML=${item.html}></div></div>
+                </vaadin-grid-tree-toggle>""")
+                .withProperty("children", tree::hasChildren)
+                .withProperty("author", reply -> reply.getAccount() == null ? "" : reply.getAccount().getAcct())
+                .withProperty("html", MastodonPost::getSafeHtml)
+                .withFunction("toggle", reply -> {
+                    if (replies.isExpanded(reply)) {
+                        replies.collapse(reply);
+                    } else {
+                        replies.expand(reply);
+                    }
+                }));
+        return replies;
+    }
+
     private void addLineNumberColumn(Grid<MastodonPost> grid) {
-        grid.addColumn(post -> getLineNumber(post, grid))
+        grid.addColumn(this::getLineNumber)
                 .setWidth("4em")
                 .setFlexGrow(0);
     }
 
+    /**
+     * Badges des 3 premiers tags, puis "+X" s'il y en a d'autres. Rendu dans
+     * le navigateur : seuls les noms et le nombre restant sont envoyés par
+     * ligne, sans composant côté serveur.
+     */
     private void addTagsColumn(Grid<MastodonPost> grid) {
-        grid.addColumn(new ComponentRenderer<>(post -> {
-            var tagContainer = new FlexLayout();
-            tagContainer.setFlexWrap(FlexLayout.FlexWrap.WRAP);
-            tagContainer.setAlignItems(FlexComponent.Alignment.CENTER);
-            
-            if (post.getTags() != null) {
-                var tags = post.getTags();
-                var displayCount = Math.min(3, tags.size());
-                
-                // Affiche les 3 premiers tags
-                for (int i = 0; i < displayCount; i++) {
-                    var badge = new Span(tags.get(i).getName());
-                    badge.getElement().getThemeList().add("badge contrast");
-                    badge.getStyle().set("margin", "2px");
-                    tagContainer.add(badge);
-                }
-                
-                // Affiche le badge +X si il y a plus de 3 tags
-                if (tags.size() > 3) {
-                    var remainingCount = tags.size() - 3;
-                    var moreBadge = new Span("+" + remainingCount);
-                    moreBadge.getElement().getThemeList().add("badge");
-                    moreBadge.getStyle().set("margin", "2px");
-                    tagContainer.add(moreBadge);
-                }
-            }
-            return tagContainer;
-        })).setAutoWidth(true);
+        grid.addColumn(LitRenderer.<MastodonPost>of("""
+                <div style="display: flex; flex-wrap: wrap; align-items: center">
+                  ${item.tags.map(tag => html`<span theme="badge contrast" style="margin: 2px">${tag}</span>`)}
+                  ${item.more > 0 ? html`<span theme="badge" style="margin: 2px">+${item.more}</span>` : ''}
+                </div>""")
+                .withProperty("tags", post -> post.getTags() == null ? List.of()
+                        : post.getTags().stream().limit(SHOWN_TAGS).map(Tag::getName).toList())
+                .withProperty("more", post -> post.getTags() == null ? 0
+                        : Math.max(0, post.getTags().size() - SHOWN_TAGS)))
+                .setAutoWidth(true);
     }
 
     private void addRepliesColumn(Grid<MastodonPost> grid) {
@@ -178,63 +319,161 @@ public class MainView extends VerticalLayout {
     }
 
     private void addContentColumn(Grid<MastodonPost> grid) {
-        grid.addColumn(p -> StringUtils.left(Jsoup.parse(p.getContent()).text(), 150))
+        grid.addColumn(MastodonPost::getPreview)
                 .setAutoWidth(true);
     }
 
-    private int getLineNumber(MastodonPost post, Grid<MastodonPost> grid) {
-        List<MastodonPost> currentItems = grid.getDataProvider()
-                .fetch(new Query<>())
-                .toList();
-        return currentItems.indexOf(post) + 1;
+    private int getLineNumber(MastodonPost post) {
+        return rows == null ? 0 : rows.indexOf(post) + 1;
     }
 
     private void closeAll(Grid<MastodonPost> grid) {
-        grid.getDataProvider().fetch(new Query<>())
-                .forEach(post -> grid.setDetailsVisible(post, false));
+        // Une seule ligne est dépliée à la fois
+        if (openDetails != null) {
+            grid.setDetailsVisible(openDetails, false);
+            openDetails = null;
+        }
     }
 
-    private MastodonPost findPostById(Grid<MastodonPost> grid, int id) {
-        List<MastodonPost> items = grid.getDataProvider().fetch(new Query<>())
-                .toList();
+    /**
+     * Branche la grid sur un DataProvider paresseux qui pagine la timeline du
+     * tag au fil du défilement.
+     */
+    private void showTag(Grid<MastodonPost> grid, String tag) {
+        closeRows();
+        shownTags = StringUtils.isEmpty(tag) ? List.of() : List.of(tag);
+        var tagPager = new TagTimelinePager(tag, timelineCache);
+        rows = tagPager;
+        grid.setItems(query -> fetchTimed(tagPager, query).stream())
+                .setIdentifierProvider(MastodonPost::getId);
+    }
 
-        if (id >= 0 && id < items.size()) {
-            return items.get(id - 1);
+    /**
+     * Fusionne les timelines de plusieurs tags, chargées en parallèle : la
+     * grid s'affiche dès que le premier tag répond, les autres s'y ajoutent
+     * en arrivant.
+     */
+    private void showTags(Grid<MastodonPost> grid, List<String> tags, TextField prompt) {
+        closeRows();
+        shownTags = tags;
+        var timeline = new MultiTagTimeline(tags, timelineCache, grid, UI.getCurrent());
+        timeline.awaitFirst();
+        rows = timeline;
+        grid.setItems(query -> fetchTimed(timeline, query).stream())
+                .setIdentifierProvider(MastodonPost::getId);
+        if (!timeline.failedTags().isEmpty()) {
+            prompt.setHelperText("Sans réponse : #" + String.join(", #", timeline.failedTags()));
         }
-        return null;
     }
 
-    public List<MastodonPost> fetchPostsFromTag(String tag) {
-        if (StringUtils.isEmpty(tag)) return List.of();
+    /**
+     * Pour un tag suivi, rafraîchi en tâche de fond, indique depuis quand
+     * ses posts ont été chargés.
+     */
+    private void showStaleness(TextField prompt, String tag) {
+        followedTags.staleness(tag).ifPresent(age -> prompt.setHelperText(
+                "#" + tag + " suivi, mis à jour il y a " + age.toSeconds() + " s"));
+    }
+
+    /**
+     * Tags distincts d'une commande, sans '#', au plus {@link #MAX_TAGS}.
+     */
+    private static List<String> parseTags(String text) {
+        return Arrays.stream(StringUtils.split(text))
+                .map(tag -> StringUtils.removeStart(tag, "#"))
+                .filter(StringUtils::isNotEmpty)
+                .distinct()
+                .limit(MAX_TAGS)
+                .toList();
+    }
+
+    /**
+     * Affiche les derniers posts du tag puis ceux qui arrivent par le
+     * streaming, par lots.
+     */
+    private void showLive(Grid<MastodonPost> grid, String tag) {
+        closeRows();
+        shownTags = StringUtils.isEmpty(tag) ? List.of() : List.of(tag);
+        if (StringUtils.isEmpty(tag)) {
+            return;
+        }
+        List<MastodonPost> initial;
         try {
-            
-            var uri = new URIBuilder("https://mastodon.social/api/v1/timelines/tag/" + tag)
-                    .addParameter("limit", "10")
-                    .build();
+            initial = timelineCache.get(tag);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        var live = new LiveTimeline(tag, initial, hashtagStreamHub, grid, UI.getCurrent());
+        rows = live;
+        grid.setItems(query -> fetchTimed(live, query).stream(), query -> live.size())
+                .setIdentifierProvider(MastodonPost::getId);
+    }
 
-            URL url = uri.toURL();
-            HttpURLConnection con = (HttpURLConnection) url.openConnection();
-            con.setRequestMethod("GET");
-            
-            BufferedReader reader = new BufferedReader(new InputStreamReader(con.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
+    private void showList(Grid<MastodonPost> grid, List<MastodonPost> posts) {
+        closeRows();
+        shownTags = List.of();
+        var list = new ListRows(posts);
+        rows = list;
+        grid.setItems(query -> fetchTimed(list, query).stream(), query -> list.size())
+                .setIdentifierProvider(MastodonPost::getId);
+    }
+
+    /**
+     * Branche la grid sur le résultat d'un filtre, lu page par page dans
+     * l'index. La timeline filtrée reste celle de {@link #shownTags}, pour
+     * pouvoir enchaîner les filtres.
+     */
+    private void showFiltered(Grid<MastodonPost> grid, FilterIndex.Result result) {
+        closeRows();
+        var filtered = new FilterRows(result);
+        rows = filtered;
+        grid.setItems(query -> fetchTimed(filtered, query).stream(), query -> filtered.size())
+                .setIdentifierProvider(MastodonPost::getId);
+    }
+
+    /**
+     * Lignes demandées par la grid, chronométrées pour les métriques.
+     */
+    private List<MastodonPost> fetchTimed(PostRows source, Query<MastodonPost, ?> query) {
+        return sessionMetrics.gridFetch().record(() -> source.fetch(query.getOffset(), query.getLimit()));
+    }
+
+    private void closeMetricsRegistration() {
+        if (metricsRegistration != null) {
+            try {
+                metricsRegistration.close();
+            } catch (Exception e) {
+                log.warn("Could not unregister view metrics", e);
             }
-            reader.close();
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.registerModule(new JavaTimeModule());
+            metricsRegistration = null;
+        }
+    }
 
-            return Arrays.stream(mapper.readValue(response.toString(), MastodonPost[].class))
-                    .collect(Collectors.toList());
-        } catch (IOException | URISyntaxException e) {
-            throw new RuntimeException(e);
+    private void closeRows() {
+        if (rows != null) {
+            rows.close();
+            rows = null;
+        }
+        openDetails = null;
+    }
+
+    private void selectLine(Grid<MastodonPost> grid, int index) {
+        if (rows == null) {
+            return;
         }
+        rows.get(index).ifPresent(post -> {
+            grid.select(post);
+            grid.scrollToIndex(index);
+        });
     }
 
     private void selectItemListener(Grid<MastodonPost> grid, Div contentDiv,
             SelectionEvent<Grid<MastodonPost>, MastodonPost> event) {
+        // Abandonne le chargement des réponses du post précédent
+        if (pendingReplies != null) {
+            pendingReplies.cancel(true);
+            pendingReplies = null;
+        }
         // Ferme tous les détails
         closeAll(grid);
         // Met à jour le contenu HTML et expande la ligne sélectionnée
@@ -244,74 +483,71 @@ public class MainView extends VerticalLayout {
             
             // Ajouter le contenu du post
             Div postContent = new Div();
-            postContent.getElement().setProperty("innerHTML", post.getContent());
+            postContent.getElement().setProperty("innerHTML", post.getSafeHtml());
             container.add(postContent);
+
+            // Vignettes des médias, servies par le proxy local
+            if (post.getMediaAttachments() != null && !post.getMediaAttachments().isEmpty()) {
+                container.add(thumbnails(post.getMediaAttachments()));
+            }
             
             // Ajouter les réponses si elles existent
             if (post.getRepliesCount() > 0) {
                 Div repliesHeader = new Div();
                 repliesHeader.setText("Réponses (" + post.getRepliesCount() + ")");
-                // Récupérer les réponses via l'API
-                try {
-                    var uri = new URIBuilder("https://mastodon.social/api/v1/statuses/" + post.getId() + "/context")
-                            .build();
-
-                    // Afficher l'URI pour pouvoir cliquer dessus
-                    Div uriDiv = new Div();
-                    uriDiv.setText(uri.toString());
-                    uriDiv.getStyle().set("color", "var(--lumo-primary-color)");
-                    uriDiv.getStyle().set("cursor", "pointer");
-                    container.add(uriDiv);
-                    // Afficher le lien du post
-                    Div postLinkDiv = new Div();
-                    String postUrl = "https://mastodon.social/@" + post.getAccount().getUsername() + "/" + post.getId();
-                    postLinkDiv.setText(postUrl);
-                    postLinkDiv.getStyle().set("color", "var(--lumo-primary-color)");
-                    postLinkDiv.getStyle().set("cursor", "pointer");
-                    postLinkDiv.getStyle().set("margin-bottom", "1em");
-                    container.add(postLinkDiv);
-
-                    URL url = uri.toURL();
-                    HttpURLConnection con = (HttpURLConnection) url.openConnection();
-                    con.setRequestMethod("GET");
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(con.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
-                    }
-                    reader.close();
-
-                    ObjectMapper mapper = new ObjectMapper();
-                    mapper.registerModule(new JavaTimeModule());
-                    var context = mapper.readTree(response.toString());
-                    var descendants = context.get("descendants");
-
-                    // Créer un conteneur pour les réponses
-                    VerticalLayout repliesContainer = new VerticalLayout();
-                    repliesContainer.setSpacing(true);
-                    repliesContainer.setPadding(true);
-                    repliesContainer.getStyle().set("background", "var(--lumo-contrast-5pct)");
-                    repliesContainer.getStyle().set("border-radius", "var(--lumo-border-radius-m)");
-
-                    // Ajouter chaque réponse
-                    for (var reply : descendants) {
-                        Div replyDiv = new Div();
-                        replyDiv.getElement().setProperty("innerHTML", reply.get("content").asText());
-                        replyDiv.getStyle().set("margin-bottom", "0.5em");
-                        repliesContainer.add(replyDiv);
-                    }
-                    
-                    container.add(repliesContainer);
-                } catch (IOException | URISyntaxException e) {
-                    Div errorDiv = new Div();
-                    errorDiv.setText("Erreur lors de la récupération des réponses: " + e.getMessage());
-                    errorDiv.getStyle().set("color", "var(--lumo-error-text-color)");
-                    container.add(errorDiv);
-                }
+                var uri = mastodonClient.contextUri(post.getId());
+
+                // Afficher l'URI pour pouvoir cliquer dessus
+                Div uriDiv = new Div();
+                uriDiv.setText(uri.toString());
+                uriDiv.getStyle().set("color", "var(--lumo-primary-color)");
+                uriDiv.getStyle().set("cursor", "pointer");
+                container.add(uriDiv);
+                // Afficher le lien du post
+                Div postLinkDiv = new Div();
+                String postUrl = mastodonClient.getBaseUrl() + "/@" + post.getAccount().getUsername() + "/" + post.getId();
+                postLinkDiv.setText(postUrl);
+                postLinkDiv.getStyle().set("color", "var(--lumo-primary-color)");
+                postLinkDiv.getStyle().set("cursor", "pointer");
+                postLinkDiv.getStyle().set("margin-bottom", "1em");
+                container.add(postLinkDiv);
+
+                // Créer un conteneur pour les réponses
+                VerticalLayout repliesContainer = new VerticalLayout();
+                repliesContainer.setSpacing(true);
+                repliesContainer.setPadding(true);
+                repliesContainer.getStyle().set("background", "var(--lumo-contrast-5pct)");
+                repliesContainer.getStyle().set("border-radius", "var(--lumo-border-radius-m)");
+                repliesContainer.add(new Div("Chargement des réponses..."));
+                container.add(repliesContainer);
+
                 repliesHeader.getStyle().set("margin-top", "1em");
                 repliesHeader.getStyle().set("font-weight", "bold");
                 container.add(repliesHeader);
+
+                // Récupérer les réponses via l'API sans bloquer le thread UI,
+                // puis les pousser au navigateur une fois arrivées
+                var future = contextCache.get(post);
+                var repliesTimer = Timer.start();
+                pendingReplies = future;
+                future.whenComplete((context, error) -> getUI().ifPresent(ui -> ui.access(() -> {
+                    // Ignore une réponse arrivée après un n/p
+                    if (pendingReplies != future) {
+                        return;
+                    }
+                    pendingReplies = null;
+                    repliesContainer.removeAll();
+                    if (error != null) {
+                        Div errorDiv = new Div();
+                        errorDiv.setText("Erreur lors de la récupération des réponses: " + rootMessage(error));
+                        errorDiv.getStyle().set("color", "var(--lumo-error-text-color)");
+                        repliesContainer.add(errorDiv);
+                        return;
+                    }
+                    // Fil en arbre, quel que soit le nombre de réponses
+                    repliesContainer.add(replyTreeGrid(new ReplyTree(post.getId(), context.getDescendants())));
+                    repliesTimer.stop(sessionMetrics.repliesShown());
+                })));
             }
             
             // Remplacer le contenu du contentDiv
@@ -319,6 +555,21 @@ public class MainView extends VerticalLayout {
             contentDiv.add(container);
             
             grid.setDetailsVisible(post, true);
+            openDetails = post;
+
+            // Précharge les réponses des posts suivants pendant la lecture
+            int index = rows.indexOf(post);
+            for (int i = 1; i <= contextCache.getPrefetchDepth(); i++) {
+                rows.peek(index + i).ifPresent(contextCache::prefetch);
+            }
         });
     }
-}
\ No newline at end of file
+
+    private static String rootMessage(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error.getMessage();
+    }
+}
@@ -0,0 +1,243 @@
+package antix.views.main;
+
+import antix.model.MastodonPost;
+import antix.service.TimelineCache;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+import com.vaadin.flow.component.grid.Grid;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Several hashtag timelines shown as one, newest first.
+ *
+ * The first page of every tag is requested concurrently through
+ * {@link TimelineCache#getAsync}. Rows are a k-way merge by {@code createdAt}
+ * of the tags that have answered so far, each paged lazily by its own
+ * {@link TagTimelinePager}. A post is shown once even if several tags carry
+ * it, and a reblog counts as the post it wraps. When a slower tag answers
+ * after the grid was first drawn, the merge is redone with it and the grid
+ * refreshed; a tag that fails or times out is left out.
+ *
+ * Apart from the completion callbacks, only used under the Vaadin session
+ * lock.
+ */
+@Slf4j
+public class MultiTagTimeline implements PostRows {
+    private final Grid<MastodonPost> grid;
+    private final List<Source> sources = new ArrayList<>();
+    private final List<MastodonPost> merged = new ArrayList<>();
+    private final PostIndex index = new PostIndex();
+    // Ids of the original posts already merged, reblogs collapsed
+    private final Set<String> seen = new HashSet<>();
+    private boolean closed;
+
+    public MultiTagTimeline(List<String> tags, TimelineCache timelineCache, Grid<MastodonPost> grid, UI ui) {
+        this.grid = grid;
+        for (var tag : tags) {
+            var source = new Source(tag, new TagTimelinePager(tag, timelineCache), timelineCache.getAsync(tag));
+            sources.add(source);
+            source.firstPage.whenComplete((posts, error) -> {
+                try {
+                    ui.access(this::admitAnswered);
+                } catch (UIDetachedException e) {
+                    close();
+                }
+            });
+        }
+    }
+
+    /**
+     * Waits until at least one tag has answered, or all have failed (each
+     * times out after the cache's {@code fan-out-timeout}); then merges those
+     * that did.
+     */
+    public void awaitFirst() {
+        var first = new CompletableFuture<Void>();
+        for (var source : sources) {
+            source.firstPage.thenRun(() -> first.complete(null));
+        }
+        CompletableFuture.allOf(sources.stream().map(source -> source.firstPage).toArray(CompletableFuture[]::new))
+                .whenComplete((none, error) -> first.complete(null));
+        try {
+            first.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+        admit();
+    }
+
+    public List<String> tags() {
+        return sources.stream().map(source -> source.tag).toList();
+    }
+
+    /**
+     * Tags that failed or timed out, so far.
+     */
+    public List<String> failedTags() {
+        return sources.stream()
+                .filter(source -> source.firstPage.isCompletedExceptionally())
+                .map(source -> source.tag)
+                .toList();
+    }
+
+    @Override
+    public List<MastodonPost> fetch(int offset, int limit) {
+        int end = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+        while (merged.size() < end) {
+            if (!mergeNext()) {
+                break;
+            }
+        }
+        if (offset >= merged.size()) {
+            return List.of();
+        }
+        return new ArrayList<>(merged.subList(offset, Math.min(end, merged.size())));
+    }
+
+    @Override
+    public Optional<MastodonPost> peek(int index) {
+        if (index < 0 || index >= merged.size()) {
+            return Optional.empty();
+        }
+        return Optional.of(merged.get(index));
+    }
+
+    @Override
+    public int indexOf(MastodonPost post) {
+        return index.positionOf(post.getId());
+    }
+
+    /**
+     * Merged rows plus the pages the tags' pagers keep; a post can be
+     * counted in both.
+     */
+    @Override
+    public int heldCount() {
+        int held = merged.size();
+        for (var source : sources) {
+            held += source.pager.heldCount();
+        }
+        return held;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (var source : sources) {
+            source.firstPage.cancel(true);
+            source.pager.close();
+        }
+    }
+
+    private void admitAnswered() {
+        if (!closed && admit()) {
+            grid.getDataProvider().refreshAll();
+        }
+    }
+
+    /**
+     * Adds the tags whose first page has arrived to the merge. Rows merged so
+     * far are merged again so that they stay in order.
+     *
+     * @return whether a tag was added
+     */
+    private boolean admit() {
+        boolean added = false;
+        for (var source : sources) {
+            if (!source.admitted && source.firstPage.isDone()) {
+                source.admitted = true;
+                if (source.firstPage.isCompletedExceptionally()) {
+                    log.warn("Leaving #{} out of {}: {}", source.tag, tags(), failure(source));
+                } else {
+                    source.merging = true;
+                    added = true;
+                }
+            }
+        }
+        if (added) {
+            int rows = merged.size();
+            merged.clear();
+            index.clear();
+            seen.clear();
+            sources.forEach(source -> source.next = 0);
+            fetch(0, rows);
+        }
+        return added;
+    }
+
+    /**
+     * Appends the newest unmerged post among the heads of the merged tags.
+     *
+     * @return false once every tag is exhausted
+     */
+    private boolean mergeNext() {
+        while (true) {
+            Source newest = null;
+            MastodonPost newestPost = null;
+            for (var source : sources) {
+                if (!source.merging) {
+                    continue;
+                }
+                var head = source.pager.get(source.next);
+                if (head.isEmpty()) {
+                    continue;
+                }
+                if (newest == null || head.get().getCreatedAtMillis() > newestPost.getCreatedAtMillis()) {
+                    newest = source;
+                    newestPost = head.get();
+                }
+            }
+            if (newest == null) {
+                return false;
+            }
+            newest.next++;
+            if (seen.add(originalId(newestPost)) && index.add(newestPost) == merged.size()) {
+                merged.add(newestPost);
+                return true;
+            }
+        }
+    }
+
+    private static String originalId(MastodonPost post) {
+        return post.getReblog() != null ? post.getReblog().getId() : post.getId();
+    }
+
+    private static String failure(Source source) {
+        try {
+            source.firstPage.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause() instanceof TimeoutException ? "timed out" : String.valueOf(e.getCause());
+        } catch (RuntimeException e) {
+            return e.toString();
+        }
+    }
+
+    private static final class Source {
+        final String tag;
+        final TagTimelinePager pager;
+        final CompletableFuture<List<MastodonPost>> firstPage;
+        boolean admitted;
+        boolean merging;
+        // Position in the pager of the next post to merge
+        int next;
+
+        Source(String tag, TagTimelinePager pager, CompletableFuture<List<MastodonPost>> firstPage) {
+            this.tag = tag;
+            this.pager = pager;
+            this.firstPage = firstPage;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package antix.views.main;
+
+import antix.model.MastodonPost;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ordered index of the posts shown in a view: row position to status id and
+ * back, both in O(1). Only ids are kept, so positions survive the pager
+ * dropping a page's posts from memory.
+ */
+public class PostIndex {
+    private final List<String> ids = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    /**
+     * Appends {@code post} at the end, unless it is already indexed.
+     *
+     * @return its position
+     */
+    public int add(MastodonPost post) {
+        Integer existing = positions.putIfAbsent(post.getId(), ids.size());
+        if (existing != null) {
+            return existing;
+        }
+        ids.add(post.getId());
+        return ids.size() - 1;
+    }
+
+    /**
+     * Position of the post with {@code id}, or -1 if it isn't indexed.
+     */
+    public int positionOf(String id) {
+        return positions.getOrDefault(id, -1);
+    }
+
+    public String idAt(int position) {
+        return ids.get(position);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public void clear() {
+        ids.clear();
+        positions.clear();
+    }
+}
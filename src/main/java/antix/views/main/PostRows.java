@@ -0,0 +1,47 @@
+package antix.views.main;
+
+import antix.model.MastodonPost;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The rows behind the grid of {@link MainView}: a paged hashtag timeline or a
+ * live hashtag stream. Positions are 0-based; line numbers shown to the user
+ * are position + 1.
+ */
+public interface PostRows {
+
+    List<MastodonPost> fetch(int offset, int limit);
+
+    /**
+     * Returns the post at {@code index}, loading it if needed.
+     */
+    default Optional<MastodonPost> get(int index) {
+        if (index < 0) {
+            return Optional.empty();
+        }
+        return fetch(index, 1).stream().findFirst();
+    }
+
+    /**
+     * Returns the post at {@code index} only if it is already in memory.
+     */
+    Optional<MastodonPost> peek(int index);
+
+    /**
+     * Position of {@code post}, or -1 if it isn't one of the rows.
+     */
+    int indexOf(MastodonPost post);
+
+    /**
+     * Number of posts currently kept in memory. Read by the metrics thread,
+     * so it must not fail when the rows change concurrently.
+     */
+    int heldCount();
+
+    /**
+     * Releases background work (prefetches, stream subscriptions).
+     */
+    void close();
+}
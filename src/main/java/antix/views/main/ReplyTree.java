@@ -0,0 +1,95 @@
+package antix.views.main;
+
+import antix.model.MastodonPost;
+import com.vaadin.flow.data.provider.hierarchy.AbstractBackEndHierarchicalDataProvider;
+import com.vaadin.flow.data.provider.hierarchy.HierarchicalDataProvider;
+import com.vaadin.flow.data.provider.hierarchy.HierarchicalQuery;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The replies of a post as a tree, built from {@code inReplyToId} over the
+ * descendants of its context, whatever their order.
+ *
+ * Replies to a post missing from the context (deleted, or not visible to us)
+ * hang from the root so that they are still shown. Children keep the order
+ * of the context, which is the order of the thread.
+ */
+public class ReplyTree {
+    private final String rootId;
+    private final Map<String, List<MastodonPost>> children;
+    private final int size;
+
+    public ReplyTree(String rootId, List<MastodonPost> descendants) {
+        this.rootId = rootId;
+        this.size = descendants.size();
+        this.children = new HashMap<>(descendants.size() * 2);
+        var ids = new HashSet<String>(descendants.size() * 2);
+        for (var reply : descendants) {
+            ids.add(reply.getId());
+        }
+        for (var reply : descendants) {
+            String parent = reply.getInReplyToId();
+            // The root itself isn't a descendant: its replies land here too
+            if (parent == null || !ids.contains(parent)) {
+                parent = rootId;
+            }
+            children.computeIfAbsent(parent, key -> new ArrayList<>()).add(reply);
+        }
+    }
+
+    /**
+     * Replies to {@code parent}, or the direct replies to the root when it is
+     * null.
+     */
+    public List<MastodonPost> children(MastodonPost parent) {
+        return children.getOrDefault(parent == null ? rootId : parent.getId(), List.of());
+    }
+
+    public boolean hasChildren(MastodonPost reply) {
+        return children.containsKey(reply.getId());
+    }
+
+    /**
+     * Number of replies in the tree.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Serves the children of a node when it is expanded, and only the rows
+     * the tree grid asks for.
+     */
+    public HierarchicalDataProvider<MastodonPost, Void> dataProvider() {
+        return new AbstractBackEndHierarchicalDataProvider<>() {
+            @Override
+            protected Stream<MastodonPost> fetchChildrenFromBackEnd(HierarchicalQuery<MastodonPost, Void> query) {
+                var replies = children(query.getParent());
+                int from = Math.min(query.getOffset(), replies.size());
+                int to = (int) Math.min((long) from + query.getLimit(), replies.size());
+                return replies.subList(from, to).stream();
+            }
+
+            @Override
+            public int getChildCount(HierarchicalQuery<MastodonPost, Void> query) {
+                return children(query.getParent()).size();
+            }
+
+            @Override
+            public boolean hasChildren(MastodonPost item) {
+                return ReplyTree.this.hasChildren(item);
+            }
+
+            @Override
+            public Object getId(MastodonPost item) {
+                return item.getId();
+            }
+        };
+    }
+}
@@ -0,0 +1,261 @@
+package antix.views.main;
+
+import antix.model.MastodonPost;
+import antix.service.TimelineCache;
+import antix.service.UpstreamScheduler;
+import antix.service.UpstreamScheduler.Priority;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Lazily pages through a hashtag timeline for one UI session, following
+ * Mastodon {@code max_id} cursors as rows are requested.
+ *
+ * The first page comes from the shared {@link TimelineCache} and stays in
+ * memory: it has no cursor, and the latest posts of the tag move on, so
+ * fetching it again would shift the rows. Of the other pages, only the
+ * {@link #MAX_CACHED_PAGES} most recently used keep their posts; older ones
+ * remember their cursor and are fetched again if scrolled back to, then
+ * lined up with the rows they had: posts deleted upstream since become
+ * tombstones, and later posts that moved up into the page are left to their
+ * own rows. The next page is prefetched in the background when a request gets within half a
+ * page of the end of what is loaded, at the lowest upstream priority: if it is
+ * shed, the page is fetched in the foreground once it is needed.
+ *
+ * Not thread-safe: it is only used under the Vaadin session lock.
+ */
+public class TagTimelinePager implements PostRows {
+    static final int PAGE_SIZE = 40;
+    static final int MAX_CACHED_PAGES = 10;
+
+    private final String tag;
+    private final TimelineCache timelineCache;
+    private final List<Page> pages = new ArrayList<>();
+    private final PostIndex index = new PostIndex();
+    private final Deque<Page> resident = new ArrayDeque<>();
+    private boolean exhausted;
+    private CompletableFuture<List<MastodonPost>> prefetch;
+    private String prefetchCursor;
+    private volatile int held;
+
+    public TagTimelinePager(String tag, TimelineCache timelineCache) {
+        this.tag = tag;
+        this.timelineCache = timelineCache;
+        this.exhausted = StringUtils.isEmpty(tag);
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * Returns the posts in {@code [offset, offset + limit)}, loading pages as
+     * needed. Fewer posts are returned only once the timeline is exhausted.
+     */
+    @Override
+    public List<MastodonPost> fetch(int offset, int limit) {
+        int end = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+        while (loadedCount() < end && !exhausted) {
+            appendPage();
+        }
+        var result = new ArrayList<MastodonPost>(Math.max(0, Math.min(end, loadedCount()) - offset));
+        for (int index = offset; index < end && index < loadedCount(); ) {
+            var page = pageAt(index);
+            var posts = postsOf(page);
+            for (int i = index - page.start; i < page.size && index < end; i++, index++) {
+                if (i < posts.size()) {
+                    result.add(posts.get(i));
+                }
+            }
+        }
+        prefetchIfNear(end);
+        return result;
+    }
+
+    /**
+     * Returns the post at {@code index} only if its page is already in
+     * memory; never triggers a fetch.
+     */
+    @Override
+    public Optional<MastodonPost> peek(int index) {
+        if (index < 0 || index >= loadedCount()) {
+            return Optional.empty();
+        }
+        var page = pageAt(index);
+        if (page.posts == null || index - page.start >= page.posts.size()) {
+            return Optional.empty();
+        }
+        return Optional.of(page.posts.get(index - page.start));
+    }
+
+    /**
+     * Position of {@code post} among the loaded rows, or -1 if it hasn't been
+     * loaded. O(1), whether or not its page is still held in memory.
+     */
+    @Override
+    public int indexOf(MastodonPost post) {
+        return index.positionOf(post.getId());
+    }
+
+    @Override
+    public int heldCount() {
+        return held;
+    }
+
+    public int loadedCount() {
+        return index.size();
+    }
+
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Drops any background prefetch; called when the view switches tag.
+     */
+    @Override
+    public void close() {
+        if (prefetch != null) {
+            prefetch.cancel(true);
+            prefetch = null;
+        }
+    }
+
+    private void appendPage() {
+        String cursor = pages.isEmpty() ? null : pages.get(pages.size() - 1).lastId;
+        List<MastodonPost> posts;
+        if (prefetch != null && cursor != null && cursor.equals(prefetchCursor)) {
+            posts = await(prefetch);
+            prefetch = null;
+        } else {
+            posts = load(cursor);
+        }
+        // Cursor pages can overlap if posts arrive while paging
+        var fresh = new ArrayList<MastodonPost>(posts.size());
+        int start = loadedCount();
+        for (var post : posts) {
+            if (index.add(post) >= start) {
+                fresh.add(post);
+            }
+        }
+        if (fresh.isEmpty()) {
+            exhausted = true;
+            return;
+        }
+        var page = new Page(start, cursor, fresh);
+        pages.add(page);
+        touch(page);
+    }
+
+    private void prefetchIfNear(int end) {
+        if (exhausted || prefetch != null || pages.isEmpty() || end < loadedCount() - PAGE_SIZE / 2) {
+            return;
+        }
+        prefetchCursor = pages.get(pages.size() - 1).lastId;
+        prefetch = UpstreamScheduler.withPriority(Priority.BACKGROUND,
+                () -> timelineCache.getOlderAsync(tag, prefetchCursor, PAGE_SIZE));
+    }
+
+    private List<MastodonPost> load(String maxId) {
+        try {
+            if (maxId == null) {
+                return timelineCache.get(tag);
+            }
+            return timelineCache.getOlder(tag, maxId, PAGE_SIZE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private List<MastodonPost> await(CompletableFuture<List<MastodonPost>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            // The prefetch failed, try once more in the foreground
+            return load(prefetchCursor);
+        }
+    }
+
+    private Page pageAt(int index) {
+        int low = 0;
+        int high = pages.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (pages.get(mid).start <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return pages.get(low);
+    }
+
+    private List<MastodonPost> postsOf(Page page) {
+        if (page.posts == null) {
+            page.posts = reconcile(page, load(page.maxId));
+        }
+        touch(page);
+        return page.posts;
+    }
+
+    /**
+     * Puts each refetched post back at the row it was indexed at, so that
+     * {@link #indexOf} and the rows still agree when the cursor page has
+     * shifted.
+     */
+    private List<MastodonPost> reconcile(Page page, List<MastodonPost> fetched) {
+        var rows = new MastodonPost[page.size];
+        for (var post : fetched) {
+            int row = index.positionOf(post.getId()) - page.start;
+            if (row >= 0 && row < page.size) {
+                rows[row] = post;
+            }
+        }
+        for (int row = 0; row < rows.length; row++) {
+            if (rows[row] == null) {
+                rows[row] = Tombstones.of(index.idAt(page.start + row));
+            }
+        }
+        return Arrays.asList(rows);
+    }
+
+    private void touch(Page page) {
+        if (page.maxId != null) {
+            resident.remove(page);
+            resident.addFirst(page);
+            while (resident.size() > MAX_CACHED_PAGES) {
+                resident.removeLast().posts = null;
+            }
+        }
+        held = pages.get(0).posts.size() + resident.stream().mapToInt(cached -> cached.posts.size()).sum();
+    }
+
+    private static final class Page {
+        final int start;
+        final int size;
+        // Cursor the page was fetched with, null for the first page
+        final String maxId;
+        final String lastId;
+        List<MastodonPost> posts;
+
+        Page(int start, String maxId, List<MastodonPost> posts) {
+            this.start = start;
+            this.size = posts.size();
+            this.maxId = maxId;
+            this.lastId = posts.get(posts.size() - 1).getId();
+            this.posts = posts;
+        }
+    }
+}
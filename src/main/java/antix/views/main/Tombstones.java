@@ -0,0 +1,33 @@
+package antix.views.main;
+
+import antix.model.MastodonPost;
+
+/**
+ * Rows standing for posts deleted upstream, so that the rows after them keep
+ * their line numbers.
+ */
+final class Tombstones {
+
+    private Tombstones() {
+    }
+
+    static MastodonPost of(MastodonPost post) {
+        var tombstone = of(post.getId());
+        tombstone.setCreatedAtMillis(post.getCreatedAtMillis());
+        tombstone.setAccount(post.getAccount());
+        return tombstone;
+    }
+
+    /**
+     * Tombstone of a post of which only the id is left.
+     */
+    static MastodonPost of(String id) {
+        var tombstone = new MastodonPost();
+        tombstone.setId(id);
+        tombstone.setContent("");
+        tombstone.setPlainText("(supprimé)");
+        tombstone.setPreview("(supprimé)");
+        tombstone.setSafeHtml("<p><em>(supprimé)</em></p>");
+        return tombstone;
+    }
+}
@@ -0,0 +1,139 @@
+package antix.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks {@link Bitmap} against {@link BitSet} over sets mixing sparse
+ * (array) and dense (bitmap) chunks.
+ */
+class BitmapTest {
+    private static final int CHUNK = 1 << 16;
+
+    @Test
+    void operationsMatchBitSetAcrossContainerTypes() {
+        var random = new Random(11);
+        var shapes = List.of(
+                // cardinality per chunk, over 4 chunks: absent, sparse, at the limit, dense
+                new int[]{0, 10, Bitmap.ARRAY_MAX, 30_000},
+                new int[]{20_000, 0, Bitmap.ARRAY_MAX + 1, 5},
+                new int[]{60_000, 3_000, 0, 40_000},
+                new int[]{1, 1, 1, 1});
+        for (var left : shapes) {
+            for (var right : shapes) {
+                var a = random(left, random);
+                var b = random(right, random);
+
+                check(Bitmap.and(a.bitmap, b.bitmap), and(a.bits, b.bits));
+                check(Bitmap.or(a.bitmap, b.bitmap), or(a.bits, b.bits));
+                check(Bitmap.andNot(a.bitmap, b.bitmap), andNot(a.bits, b.bits));
+            }
+        }
+    }
+
+    @Test
+    void denseChunkBecomesSparseAgainOnRemoval() {
+        var bitmap = new Bitmap();
+        var bits = new BitSet();
+        for (int i = 0; i <= Bitmap.ARRAY_MAX; i++) {
+            bitmap.add(i * 3);
+            bits.set(i * 3);
+        }
+        for (int i = 0; i < 100; i++) {
+            bitmap.remove(i * 3);
+            bits.clear(i * 3);
+        }
+        bitmap.remove(7);
+
+        check(bitmap, bits);
+        check(Bitmap.or(bitmap, new Bitmap()), bits);
+    }
+
+    @Test
+    void resultsShareNothingWithTheirOperands() {
+        var a = new Bitmap();
+        a.add(1);
+        a.add(CHUNK + 1);
+        var b = new Bitmap();
+        b.add(1);
+
+        var union = Bitmap.or(a, b);
+        union.add(2);
+        union.remove(1);
+
+        assertThat(a.contains(1)).isTrue();
+        assertThat(a.contains(2)).isFalse();
+        assertThat(b.cardinality()).isEqualTo(1);
+    }
+
+    @Test
+    void emptyOperands() {
+        var a = new Bitmap();
+        a.add(5);
+        var empty = new Bitmap();
+
+        assertThat(Bitmap.and(a, empty).isEmpty()).isTrue();
+        assertThat(Bitmap.andNot(a, a).isEmpty()).isTrue();
+        assertThat(Bitmap.or(empty, a).contains(5)).isTrue();
+    }
+
+    private static void check(Bitmap bitmap, BitSet expected) {
+        var values = IntStream.builder();
+        bitmap.forEach(values::add);
+        assertThat(values.build().toArray()).isEqualTo(expected.stream().toArray());
+        assertThat(bitmap.cardinality()).isEqualTo(expected.cardinality());
+        assertThat(bitmap.isEmpty()).isEqualTo(expected.isEmpty());
+        for (int probe = 0; probe < 4 * CHUNK; probe += 997) {
+            assertThat(bitmap.contains(probe)).isEqualTo(expected.get(probe));
+        }
+    }
+
+    private static Sets random(int[] perChunk, Random random) {
+        var sets = new Sets(new Bitmap(), new BitSet());
+        for (int chunk = 0; chunk < perChunk.length; chunk++) {
+            var values = new BitSet(CHUNK);
+            for (int added = 0; added < perChunk[chunk]; ) {
+                int value = random.nextInt(CHUNK);
+                if (!values.get(value)) {
+                    values.set(value);
+                    added++;
+                }
+            }
+            int base = chunk * CHUNK;
+            // Added out of order, as documents are re-filed
+            values.stream().boxed().sorted((x, y) -> Integer.compare(x * 31 % 101, y * 31 % 101))
+                    .forEach(value -> {
+                        sets.bitmap.add(base + value);
+                        sets.bits.set(base + value);
+                    });
+        }
+        return sets;
+    }
+
+    private static BitSet and(BitSet a, BitSet b) {
+        var result = (BitSet) a.clone();
+        result.and(b);
+        return result;
+    }
+
+    private static BitSet or(BitSet a, BitSet b) {
+        var result = (BitSet) a.clone();
+        result.or(b);
+        return result;
+    }
+
+    private static BitSet andNot(BitSet a, BitSet b) {
+        var result = (BitSet) a.clone();
+        result.andNot(b);
+        return result;
+    }
+
+    private record Sets(Bitmap bitmap, BitSet bits) {
+    }
+}
@@ -0,0 +1,120 @@
+package antix.search;
+
+import antix.model.MastodonPost;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchIndexTest {
+    private static final long HOUR = 3_600_000;
+
+    @Test
+    void allTermsMustMatch() {
+        var index = new SearchIndex(new SearchIndexProperties(1_000, 10));
+        index.onIngest(post("1", 0, 0, "Virtual threads in Java"));
+        index.onIngest(post("2", 1, 0, "Java records"));
+        index.onIngest(post("3", 2, 0, "Kotlin coroutines and virtual threads"));
+
+        assertThat(ids(index.search("java"))).containsExactly("2", "1");
+        assertThat(ids(index.search("VIRTUAL java"))).containsExactly("1");
+        assertThat(ids(index.search("java scala"))).isEmpty();
+    }
+
+    @Test
+    void phrasesMustBeConsecutive() {
+        var index = new SearchIndex(new SearchIndexProperties(1_000, 10));
+        index.onIngest(post("1", 0, 0, "threads are virtual"));
+        index.onIngest(post("2", 1, 0, "virtual threads"));
+
+        assertThat(ids(index.search("\"virtual threads\""))).containsExactly("2");
+        assertThat(index.search("\"virtual threads\"").matches()).isEqualTo(1);
+    }
+
+    @Test
+    void editedPostIsFoundByItsNewTextOnly() {
+        var index = new SearchIndex(new SearchIndexProperties(1_000, 10));
+        index.onIngest(post("1", 0, 0, "Spring Boot"));
+        index.onIngest(post("1", 0, 0, "Quarkus"));
+
+        assertThat(ids(index.search("spring"))).isEmpty();
+        assertThat(ids(index.search("quarkus"))).containsExactly("1");
+    }
+
+    /**
+     * Ranking stops early once older documents can't beat the k-th best;
+     * it must still find the same top k and count every match.
+     */
+    @Test
+    void earlyTerminationKeepsTheBestAndCountsEveryMatch() {
+        int k = 20;
+        var index = new SearchIndex(new SearchIndexProperties(100_000, k));
+        var random = new Random(7);
+        var matching = new ArrayList<MastodonPost>();
+        for (int i = 0; i < 20_000; i++) {
+            // Mostly in arrival order, a few late arrivals, favourites skewed low
+            long hours = i / 10 - (random.nextInt(20) == 0 ? random.nextInt(500) : 0);
+            int favourites = (int) Math.exp(random.nextDouble() * 7) - 1;
+            String text = random.nextInt(3) == 0 ? "java benchmark" : "kotlin";
+            var post = post(String.valueOf(i), hours, favourites, text);
+            index.onIngest(post);
+            if (text.startsWith("java")) {
+                matching.add(post);
+            }
+        }
+
+        var result = index.search("java");
+
+        var expected = matching.stream().sorted(Comparator.comparingDouble(SearchIndexTest::score).reversed())
+                .limit(k).map(MastodonPost::getId).toList();
+        assertThat(ids(result)).containsExactlyElementsOf(expected);
+        assertThat(result.matches()).isEqualTo(matching.size());
+    }
+
+    @Test
+    void oldestPostsAreDroppedPastMaxPosts() {
+        var index = new SearchIndex(new SearchIndexProperties(100, 200));
+        for (int i = 0; i < 101; i++) {
+            index.onIngest(post(String.valueOf(i), i, 0, "java"));
+        }
+
+        assertThat(index.stats().posts()).isEqualTo(76);
+        assertThat(ids(index.search("java"))).startsWith("100", "99").doesNotContain("24").contains("25");
+    }
+
+    @Test
+    void repeatedEditsDoNotPileUpDeadDocuments() {
+        var index = new SearchIndex(new SearchIndexProperties(1_000, 10));
+        index.onIngest(post("0", 0, 0, "java"));
+        for (int i = 0; i < 5_000; i++) {
+            index.onIngest(post("1", 1, 0, "edit" + i));
+        }
+
+        // Each edit left a dead document and a term only it had
+        assertThat(index.stats().terms()).isLessThanOrEqualTo(1_026);
+        assertThat(ids(index.search("edit4999"))).containsExactly("1");
+        assertThat(ids(index.search("edit10"))).isEmpty();
+        assertThat(ids(index.search("java"))).containsExactly("0");
+    }
+
+    private static double score(MastodonPost post) {
+        return post.getCreatedAtMillis() / (double) HOUR + 6 * Math.log1p(post.getFavouritesCount());
+    }
+
+    private static MastodonPost post(String id, long hours, int favourites, String text) {
+        var post = new MastodonPost();
+        post.setId(id);
+        post.setCreatedAtMillis(1_700_000_000_000L + hours * HOUR);
+        post.setFavouritesCount(favourites);
+        post.setPlainText(text);
+        return post;
+    }
+
+    private static List<String> ids(SearchIndex.Result result) {
+        return result.posts().stream().map(MastodonPost::getId).toList();
+    }
+}
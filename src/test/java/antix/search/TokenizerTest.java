@@ -0,0 +1,26 @@
+package antix.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenizerTest {
+
+    @Test
+    void foldsCaseAndAccents() {
+        assertThat(Tokenizer.tokens("Café #Java")).containsExactly("cafe", "java");
+        assertThat(Tokenizer.tokens("ÉLÈVE naïve")).containsExactly("eleve", "naive");
+    }
+
+    @Test
+    void splitsOnAnythingButLettersAndDigits() {
+        assertThat(Tokenizer.tokens("jdk-21, (virtual)threads!")).containsExactly("jdk", "21", "virtual", "threads");
+        assertThat(Tokenizer.tokens("@duke@floss.social")).containsExactly("duke", "floss", "social");
+    }
+
+    @Test
+    void emptyTextHasNoTokens() {
+        assertThat(Tokenizer.tokens(null)).isEmpty();
+        assertThat(Tokenizer.tokens("  --- ")).isEmpty();
+    }
+}
@@ -0,0 +1,159 @@
+package antix.service;
+
+import antix.metrics.UpstreamMetrics;
+import antix.service.UpstreamScheduler.Priority;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link MastodonClient} and {@link UpstreamScheduler} against a local
+ * stand-in server that answers with the {@code X-RateLimit-*} headers the
+ * test sets.
+ */
+class RateLimitTest {
+    private static final int LIMIT = 100;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    // Epoch millis at which each request reached the server
+    private final List<Long> served = new CopyOnWriteArrayList<>();
+    private volatile Function<Integer, Response> responses;
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void backgroundWaitsForTheResetWhenOnlyTheReserveIsLeft() throws Exception {
+        var client = client(Duration.ofSeconds(5));
+        long reset = System.currentTimeMillis() + 1_500;
+        // Below the 20% background reserve until the reset, then a fresh window
+        responses = n -> System.currentTimeMillis() < reset
+                ? new Response(200, LIMIT - 90 - n, reset)
+                : new Response(200, LIMIT - 1, reset + 300_000);
+
+        client.getTagTimeline("java", 10);
+        var background = UpstreamScheduler.withPriority(Priority.BACKGROUND,
+                () -> client.async(() -> client.getTagTimeline("java", 10)));
+        TimeUnit.MILLISECONDS.sleep(300);
+        assertThat(served).hasSize(1);
+
+        // Interactive requests may spend the reserve meanwhile
+        client.getTagTimeline("java", 10);
+        assertThat(served).hasSize(2);
+
+        background.get(5, TimeUnit.SECONDS);
+        assertThat(served).hasSize(3);
+        assertThat(served.get(2)).isGreaterThanOrEqualTo(reset);
+    }
+
+    @Test
+    void refusedRequestIsRetriedOnceTheBudgetIsRestored() throws Exception {
+        var client = client(Duration.ofSeconds(5));
+        long reset = System.currentTimeMillis() + 1_000;
+        responses = n -> n == 0
+                ? new Response(429, 0, reset)
+                : new Response(200, LIMIT - 1, reset + 300_000);
+
+        var posts = client.getTagTimeline("java", 10);
+
+        assertThat(posts).isEmpty();
+        assertThat(served).hasSize(2);
+        assertThat(served.get(1)).isGreaterThanOrEqualTo(reset);
+    }
+
+    @Test
+    void backgroundIsShedWhenTheResetIsPastMaxWait() throws Exception {
+        var client = client(Duration.ofSeconds(1));
+        long reset = System.currentTimeMillis() + 60_000;
+        responses = n -> new Response(200, 0, reset);
+        client.getTagTimeline("java", 10);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> UpstreamScheduler.withPriority(Priority.BACKGROUND, () -> {
+            try {
+                return client.getTagTimeline("java", 10);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        })).hasCauseInstanceOf(RateLimitedException.class)
+                .satisfies(e -> assertThat(RateLimitedException.find(e).getRetryAfter())
+                        .isGreaterThan(Duration.ofSeconds(50)));
+
+        // Given up at once rather than after max-wait
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(500));
+        assertThat(served).hasSize(1);
+        assertThat(registry.counter("antix.upstream.scheduler.shed", "priority", "background").count())
+                .isEqualTo(1);
+    }
+
+    private MastodonClient client(Duration maxWait) {
+        var properties = new MastodonProperties("http://localhost:" + server.getAddress().getPort(),
+                Duration.ofSeconds(5), Duration.ofSeconds(10), "", "");
+        var rateLimit = new RateLimitProperties(LIMIT, 0.2, 0.05, maxWait, 3, Duration.ofMillis(100),
+                Duration.ofSeconds(2));
+        var metrics = new UpstreamMetrics(registry);
+        var client = new MastodonClient(properties,
+                new StaticListableBeanFactory().getBeanProvider(PostIngestListener.class), metrics,
+                new UpstreamScheduler(rateLimit, metrics));
+        // The first request is slow (connection, class loading), keep it out of the timed windows
+        try {
+            client.getTagTimeline("warm-up", 1);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return client;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (exchange.getRequestURI().getPath().endsWith("/warm-up")) {
+                // No rate limit headers: the scheduler holds nothing back
+                exchange.sendResponseHeaders(200, 2);
+                exchange.getResponseBody().write("[]".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            var response = responses.apply(served.size());
+            served.add(System.currentTimeMillis());
+            var headers = exchange.getResponseHeaders();
+            headers.set("Content-Type", "application/json");
+            headers.set("X-RateLimit-Limit", String.valueOf(LIMIT));
+            headers.set("X-RateLimit-Remaining", String.valueOf(response.remaining()));
+            headers.set("X-RateLimit-Reset", Instant.ofEpochMilli(response.reset()).toString());
+            byte[] body = (response.status() == 200 ? "[]" : "{\"error\":\"Too many requests\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(response.status(), body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    private record Response(int status, int remaining, long reset) {
+    }
+}
@@ -0,0 +1,100 @@
+package antix.service;
+
+import antix.metrics.UpstreamMetrics;
+import antix.model.MastodonPost;
+import antix.store.PostStore;
+import antix.store.PostStoreProperties;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link TimelineCache} in front of a local stand-in server whose answers
+ * the test holds back.
+ */
+class TimelineCacheTest {
+    private static final String POSTS = """
+            [{"id": "1", "created_at": "2024-01-01T00:00:00.000Z", "content": "<p>hello</p>", "tags": []}]""";
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch received = new CountDownLatch(1);
+    private final AtomicInteger served = new AtomicInteger();
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void cancelledCallerLeavesTheSharedLoadToTheOthers() throws Exception {
+        var cache = cache();
+        // A multi-tag view asks for #java, another session then waits on the same load
+        var closing = cache.getAsync("java");
+        assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+        var waiting = cache.getAsync("java");
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        // The first view is closed before upstream answers
+        closing.cancel(true);
+        release.countDown();
+
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).extracting(MastodonPost::getId).containsExactly("1");
+        assertThat(cache.get("java")).extracting(MastodonPost::getId).containsExactly("1");
+        assertThat(served).hasValue(1);
+    }
+
+    private TimelineCache cache() {
+        var registry = new SimpleMeterRegistry();
+        var properties = new MastodonProperties("http://localhost:" + server.getAddress().getPort(),
+                Duration.ofSeconds(5), Duration.ofSeconds(10), "", "");
+        var rateLimit = new RateLimitProperties(300, 0.2, 0.05, Duration.ofSeconds(5), 3, Duration.ofMillis(100),
+                Duration.ofSeconds(2));
+        var metrics = new UpstreamMetrics(registry);
+        var listeners = new StaticListableBeanFactory().getBeanProvider(PostIngestListener.class);
+        var client = new MastodonClient(properties, listeners, metrics, new UpstreamScheduler(rateLimit, metrics));
+        var store = new PostStore(new PostStoreProperties(false, Path.of("unused"), 1_000), listeners);
+        return new TimelineCache(client, new TimelineCacheProperties(Duration.ofMinutes(1), 10, 10, 40,
+                Duration.ofSeconds(5)), store);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            served.incrementAndGet();
+            received.countDown();
+            release.await();
+            byte[] body = POSTS.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
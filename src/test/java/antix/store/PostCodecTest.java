@@ -0,0 +1,89 @@
+package antix.store;
+
+import antix.model.MastodonPost;
+import antix.service.MastodonJsonReader;
+import org.assertj.core.util.DoubleComparator;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PostCodecTest {
+
+    @Test
+    void recordedPostsSurviveARoundTrip() throws IOException {
+        var posts = recorded();
+        assertThat(posts).isNotEmpty();
+        for (var post : posts) {
+            var decoded = PostCodec.decode(ByteBuffer.wrap(PostCodec.encode(post)));
+
+            // Media sizes are only kept as width and height, the aspect is computed again
+            assertThat(decoded).usingRecursiveComparison()
+                    .ignoringFieldsMatchingRegexes(".*hideCollections", ".*meta\\.(small|original)\\.size")
+                    .withComparatorForType(new DoubleComparator(1e-6), Double.class)
+                    .isEqualTo(post);
+        }
+    }
+
+    @Test
+    void cardIsKeptAsAFlag() throws IOException {
+        var withCard = recorded().stream().filter(MastodonPost::isHasCard).findFirst().orElseThrow();
+
+        var decoded = PostCodec.decode(ByteBuffer.wrap(PostCodec.encode(withCard)));
+
+        assertThat(decoded.isHasCard()).isTrue();
+        assertThat(decoded.getCard()).isNull();
+    }
+
+    @Test
+    void reblogIsNested() throws IOException {
+        var inner = new MastodonPost();
+        inner.setId("2");
+        inner.setPlainText("original");
+        var reblog = new MastodonPost();
+        reblog.setId("1");
+        reblog.setReblog(inner);
+
+        var decoded = PostCodec.decode(ByteBuffer.wrap(PostCodec.encode(reblog)));
+
+        assertThat(decoded.getId()).isEqualTo("1");
+        assertThat(decoded.getReblog().getId()).isEqualTo("2");
+        assertThat(decoded.getReblog().getPlainText()).isEqualTo("original");
+    }
+
+    @Test
+    void unknownVersionIsRejected() {
+        byte[] record = PostCodec.encode(new MastodonPost());
+        record[0] = 99;
+
+        assertThatThrownBy(() -> PostCodec.decode(ByteBuffer.wrap(record)))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("99");
+    }
+
+    @Test
+    void corruptStringLengthFailsTheRecord() {
+        var post = new MastodonPost();
+        post.setId("1");
+        var record = ByteBuffer.wrap(PostCodec.encode(post));
+        // Length of the id, after the version and flags bytes
+        record.putInt(2, Integer.MAX_VALUE - 8);
+
+        assertThatThrownBy(() -> PostCodec.decode(record))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("past the end");
+    }
+
+    static List<MastodonPost> recorded() throws IOException {
+        var posts = new ArrayList<MastodonPost>();
+        try (var in = PostCodecTest.class.getResourceAsStream("/fixtures/tag-timeline-java.json")) {
+            new MastodonJsonReader().readPosts(in, posts::add);
+        }
+        return posts;
+    }
+}
@@ -0,0 +1,206 @@
+package antix.store;
+
+import antix.model.MastodonPost;
+import antix.model.Tag;
+import antix.service.PostIngestListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PostStoreTest {
+    private static final int ID_ENTRY_BYTES = 24;
+
+    @TempDir
+    Path directory;
+
+    private final List<PostStore> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeStores() throws IOException {
+        for (var store : opened) {
+            store.close();
+        }
+    }
+
+    @Test
+    void postsAndTagsSurviveAReopen() throws IOException {
+        var store = open(1_000);
+        store.append(posts(1, 3, "java"), "Java");
+        store.append(posts(4, 5, "kotlin"), "kotlin");
+        store.close();
+
+        var reopened = open(1_000);
+
+        assertThat(reopened.size()).isEqualTo(5);
+        assertThat(ids(reopened.latestForTag("java", 10))).containsExactly("3", "2", "1");
+        assertThat(ids(reopened.latestForTag("KOTLIN", 10))).containsExactly("5", "4");
+        assertThat(reopened.get("2").getPlainText()).isEqualTo("post 2");
+    }
+
+    @Test
+    void olderPagesStartBelowMaxId() throws IOException {
+        var store = open(1_000);
+        store.append(posts(1, 20, "java"), "java");
+
+        assertThat(ids(store.olderForTag("java", "15", 3))).containsExactly("14", "13", "12");
+        assertThat(ids(store.olderForTag("java", "3", 10))).containsExactly("2", "1");
+        assertThat(store.olderForTag("java", "1", 10)).isEmpty();
+        assertThat(store.latestForTag("scala", 10)).isEmpty();
+    }
+
+    @Test
+    void unchangedPostIsNotStoredAgain() throws IOException {
+        var store = open(1_000);
+        store.append(posts(1, 3, "java"), "java");
+        long size = Files.size(directory.resolve("posts.dat.0"));
+
+        store.append(posts(1, 3, "java"), "java");
+        assertThat(Files.size(directory.resolve("posts.dat.0"))).isEqualTo(size);
+
+        var edited = posts(2, 2, "java");
+        edited.get(0).setFavouritesCount(7);
+        store.append(edited, "java");
+        assertThat(Files.size(directory.resolve("posts.dat.0"))).isGreaterThan(size);
+        assertThat(store.get("2").getFavouritesCount()).isEqualTo(7);
+        assertThat(ids(store.latestForTag("java", 10))).containsExactly("3", "2", "1");
+    }
+
+    @Test
+    void compactionKeepsTheNewestPosts() throws IOException {
+        var store = open(5);
+        store.append(posts(1, 10, "java"), "java");
+
+        store.compact();
+
+        assertThat(store.size()).isEqualTo(5);
+        assertThat(ids(store.latestForTag("java", 10))).containsExactly("10", "9", "8", "7", "6");
+        assertThat(store.get("3")).isNull();
+        // Appended while it copies, or after: kept all the same
+        store.append(posts(11, 12, "java"), "java");
+        store.compact();
+        store.close();
+
+        var reopened = open(5);
+        assertThat(ids(reopened.latestForTag("java", 10))).containsExactly("12", "11", "10", "9", "8");
+        // Two compactions: the second generation is the only one left
+        try (var files = Files.list(directory)) {
+            assertThat(files.map(path -> path.getFileName().toString()))
+                    .containsExactlyInAnyOrder("CURRENT", "posts.dat.2", "posts.idx.2", "tags.idx.2");
+        }
+    }
+
+    @Test
+    void failedSwitchKeepsTheOldFilesInUse() throws IOException {
+        var store = open(5);
+        store.append(posts(1, 3, "java"), "java");
+        // CURRENT can't be replaced while a non-empty directory stands in its way
+        Files.createDirectories(directory.resolve("CURRENT").resolve("blocked"));
+        store.append(posts(4, 10, "java"), "java");
+
+        assertThatThrownBy(store::compact).isInstanceOf(IOException.class);
+        store.append(posts(11, 11, "java"), "java");
+        assertThat(ids(store.latestForTag("java", 3))).containsExactly("11", "10", "9");
+        store.close();
+
+        Files.delete(directory.resolve("CURRENT").resolve("blocked"));
+        Files.delete(directory.resolve("CURRENT"));
+        var reopened = open(1_000);
+        assertThat(reopened.size()).isEqualTo(11);
+        assertThat(directory.resolve("posts.dat.1")).doesNotExist();
+    }
+
+    @Test
+    void filesOfAnInterruptedCompactionAreDropped() throws IOException {
+        var store = open(1_000);
+        store.append(posts(1, 3, "java"), "java");
+        store.close();
+        // The next generation, half written when the process died
+        Files.write(directory.resolve("posts.dat.1"), new byte[]{1, 2, 3});
+        Files.write(directory.resolve("posts.idx.1"), new byte[ID_ENTRY_BYTES]);
+        Files.write(directory.resolve("CURRENT.tmp"), new byte[]{'1'});
+
+        var reopened = open(1_000);
+
+        assertThat(ids(reopened.latestForTag("java", 10))).containsExactly("3", "2", "1");
+        assertThat(directory.resolve("posts.dat.1")).doesNotExist();
+        assertThat(directory.resolve("posts.idx.1")).doesNotExist();
+        assertThat(directory.resolve("CURRENT.tmp")).doesNotExist();
+    }
+
+    @Test
+    void interruptedWriteIsIgnoredOnReopen() throws IOException {
+        var store = open(1_000);
+        store.append(posts(1, 3, "java"), "java");
+        store.close();
+        // Half an index entry, as left by a crash in the middle of an append
+        try (var ids = Files.newByteChannel(directory.resolve("posts.idx.0"), StandardOpenOption.APPEND)) {
+            ids.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 0, 0, 0, 0, 9, 0, 0}));
+        }
+
+        var reopened = open(1_000);
+        reopened.append(posts(4, 4, "java"), "java");
+
+        assertThat(ids(reopened.latestForTag("java", 10))).containsExactly("4", "3", "2", "1");
+    }
+
+    @Test
+    void listenersOnlyHearOfPostsNewToTheProcess() throws IOException {
+        var store = open(1_000);
+        store.append(posts(1, 3, "java"), "java");
+        store.close();
+        var heard = new ArrayList<String>();
+        var listeners = new StaticListableBeanFactory();
+        listeners.addBean("listener", (PostIngestListener) post -> heard.add(post.getId()));
+
+        var reopened = open(new PostStore(new PostStoreProperties(true, directory, 1_000),
+                listeners.getBeanProvider(PostIngestListener.class)));
+        reopened.latestForTag("java", 2);
+        reopened.latestForTag("java", 10);
+        reopened.get("1");
+        // Appended posts came from upstream, through the listeners already
+        reopened.append(posts(4, 4, "java"), "java");
+        reopened.latestForTag("java", 10);
+
+        assertThat(heard).containsExactly("3", "2", "1");
+    }
+
+    private PostStore open(int maxPosts) throws IOException {
+        return open(new PostStore(new PostStoreProperties(true, directory, maxPosts),
+                new StaticListableBeanFactory().getBeanProvider(PostIngestListener.class)));
+    }
+
+    private PostStore open(PostStore store) throws IOException {
+        store.open();
+        opened.add(store);
+        return store;
+    }
+
+    private static List<MastodonPost> posts(long from, long to, String tag) {
+        return LongStream.rangeClosed(from, to).mapToObj(id -> {
+            var post = new MastodonPost();
+            post.setId(String.valueOf(id));
+            post.setPlainText("post " + id);
+            var postTag = new Tag();
+            postTag.setName(tag);
+            post.setTags(List.of(postTag));
+            return post;
+        }).toList();
+    }
+
+    private static List<String> ids(List<MastodonPost> posts) {
+        return posts.stream().map(MastodonPost::getId).toList();
+    }
+}
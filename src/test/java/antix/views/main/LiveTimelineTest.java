@@ -0,0 +1,81 @@
+package antix.views.main;
+
+import antix.model.MastodonPost;
+import antix.service.HashtagStreamHub;
+import antix.service.StreamEvent;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.data.provider.DataProvider;
+import com.vaadin.flow.server.Command;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link LiveTimeline} fed by a stand-in stream, with a UI that runs
+ * {@code access} commands right away.
+ */
+class LiveTimelineTest {
+    private final HashtagStreamHub hub = mock(HashtagStreamHub.class);
+    private final AtomicReference<Consumer<StreamEvent>> listener = new AtomicReference<>();
+    private final DataProvider<MastodonPost, ?> dataProvider = mock(DataProvider.class);
+    private final Grid<MastodonPost> grid = mock(Grid.class);
+    private final UI ui = mock(UI.class);
+
+    @BeforeEach
+    void setUp() {
+        when(hub.subscribe(anyString(), any())).thenAnswer(invocation -> {
+            listener.set(invocation.getArgument(1));
+            return (AutoCloseable) () -> listener.set(null);
+        });
+        doReturn(dataProvider).when(grid).getDataProvider();
+        when(ui.access(any())).thenAnswer(invocation -> {
+            invocation.<Command>getArgument(0).execute();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    @Test
+    void newPostsAreFlushedToTheGrid() {
+        var timeline = new LiveTimeline("java", List.of(post("1")), hub, grid, ui);
+
+        listener.get().accept(new StreamEvent(StreamEvent.Type.UPDATE, "2", post("2")));
+
+        verify(dataProvider, timeout(2_000)).refreshAll();
+        assertThat(timeline.fetch(0, 10)).extracting(MastodonPost::getId).containsExactly("2", "1");
+    }
+
+    @Test
+    void flushScheduledBeforeCloseLeavesTheGridAlone() throws InterruptedException {
+        var timeline = new LiveTimeline("java", List.of(post("1")), hub, grid, ui);
+        var stream = listener.get();
+
+        stream.accept(new StreamEvent(StreamEvent.Type.UPDATE, "2", post("2")));
+        timeline.close();
+        TimeUnit.MILLISECONDS.sleep(3 * LiveTimeline.FLUSH_INTERVAL_MILLIS);
+
+        verify(dataProvider, never()).refreshAll();
+        assertThat(timeline.size()).isEqualTo(1);
+    }
+
+    private static MastodonPost post(String id) {
+        var post = new MastodonPost();
+        post.setId(id);
+        return post;
+    }
+}
@@ -0,0 +1,132 @@
+package antix.views.main;
+
+import antix.model.MastodonPost;
+import antix.service.TimelineCache;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.grid.Grid;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MultiTagTimelineTest {
+    private static final long T0 = 1_700_000_000_000L;
+
+    // Every tag's whole timeline, newest first
+    private final Map<String, List<MastodonPost>> timelines = new HashMap<>();
+    private final TimelineCache timelineCache = mock(TimelineCache.class);
+
+    @Test
+    void tagsAreMergedNewestFirstAcrossPages() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            post("java", "j" + i, 2 * i);
+            post("kotlin", "k" + i, 2 * i + 1);
+        }
+
+        var rows = timeline("java", "kotlin").fetch(0, 150);
+
+        assertThat(rows).hasSize(150);
+        assertThat(rows).isSortedAccordingTo(
+                Comparator.comparingLong(MastodonPost::getCreatedAtMillis).reversed());
+        assertThat(rows.subList(0, 4)).extracting(MastodonPost::getId).containsExactly("k99", "j99", "k98", "j98");
+    }
+
+    @Test
+    void postCarriedByTwoTagsIsShownOnce() throws IOException {
+        post("java", "1", 3);
+        post("java", "2", 2);
+        post("kotlin", "1", 3);
+        post("kotlin", "3", 1);
+
+        var rows = timeline("java", "kotlin").fetch(0, 10);
+
+        assertThat(rows).extracting(MastodonPost::getId).containsExactly("1", "2", "3");
+    }
+
+    @Test
+    void reblogCountsAsThePostItWraps() throws IOException {
+        var original = post("java", "1", 1);
+        var reblog = post("kotlin", "2", 5);
+        reblog.setReblog(original);
+        post("kotlin", "3", 0);
+
+        var timeline = timeline("java", "kotlin");
+        var rows = timeline.fetch(0, 10);
+
+        assertThat(rows).extracting(MastodonPost::getId).containsExactly("2", "3");
+        assertThat(timeline.indexOf(reblog)).isZero();
+    }
+
+    @Test
+    void failedTagIsLeftOut() throws IOException {
+        post("java", "1", 2);
+        post("kotlin", "2", 1);
+        when(timelineCache.getAsync("scala")).thenReturn(CompletableFuture.failedFuture(new TimeoutException()));
+
+        var timeline = timeline("java", "kotlin", "scala");
+
+        assertThat(timeline.failedTags()).containsExactly("scala");
+        assertThat(timeline.fetch(0, 10)).extracting(MastodonPost::getId).containsExactly("1", "2");
+    }
+
+    @SuppressWarnings("unchecked")
+    private MultiTagTimeline timeline(String... tags) throws IOException {
+        when(timelineCache.get(anyString())).thenAnswer(call -> page(call.getArgument(0), null,
+                TagTimelinePager.PAGE_SIZE));
+        when(timelineCache.getOlder(anyString(), anyString(), anyInt()))
+                .thenAnswer(call -> page(call.getArgument(0), call.getArgument(1), call.getArgument(2)));
+        when(timelineCache.getOlderAsync(anyString(), anyString(), anyInt()))
+                .thenAnswer(call -> CompletableFuture.completedFuture(
+                        page(call.getArgument(0), call.getArgument(1), call.getArgument(2))));
+        for (var tag : tags) {
+            if (timelines.containsKey(tag)) {
+                when(timelineCache.getAsync(tag)).thenReturn(
+                        CompletableFuture.completedFuture(page(tag, null, TagTimelinePager.PAGE_SIZE)));
+            }
+        }
+        var timeline = new MultiTagTimeline(List.of(tags), timelineCache, mock(Grid.class), mock(UI.class));
+        timeline.awaitFirst();
+        return timeline;
+    }
+
+    /**
+     * Posts of {@code tag} after {@code maxId}, as a max_id page would.
+     */
+    private List<MastodonPost> page(String tag, String maxId, int limit) {
+        var posts = timelines.getOrDefault(tag, List.of());
+        int from = 0;
+        if (maxId != null) {
+            while (from < posts.size() && !posts.get(from).getId().equals(maxId)) {
+                from++;
+            }
+            from++;
+        }
+        return List.copyOf(posts.subList(Math.min(from, posts.size()), Math.min(from + limit, posts.size())));
+    }
+
+    private MastodonPost post(String tag, String id, long minutes) {
+        var post = new MastodonPost();
+        post.setId(id);
+        post.setCreatedAtMillis(T0 + minutes * 60_000);
+        var timeline = timelines.computeIfAbsent(tag, t -> new ArrayList<>());
+        // Newest first
+        int at = 0;
+        while (at < timeline.size() && timeline.get(at).getCreatedAtMillis() > post.getCreatedAtMillis()) {
+            at++;
+        }
+        timeline.add(at, post);
+        return post;
+    }
+}
@@ -0,0 +1,74 @@
+package antix.views.main;
+
+import antix.model.MastodonPost;
+import com.vaadin.flow.data.provider.hierarchy.HierarchicalQuery;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReplyTreeTest {
+
+    @Test
+    void repliesNestUnderTheirParentWhateverTheOrder() {
+        var a = reply("a", "root");
+        var b = reply("b", "a");
+        var c = reply("c", "b");
+        var d = reply("d", "root");
+
+        var tree = new ReplyTree("root", List.of(c, d, b, a));
+
+        assertThat(ids(tree.children(null))).containsExactly("d", "a");
+        assertThat(ids(tree.children(a))).containsExactly("b");
+        assertThat(ids(tree.children(b))).containsExactly("c");
+        assertThat(tree.hasChildren(b)).isTrue();
+        assertThat(tree.hasChildren(c)).isFalse();
+        assertThat(tree.size()).isEqualTo(4);
+    }
+
+    @Test
+    void orphansHangFromTheRootInThreadOrder() {
+        var a = reply("a", "root");
+        var orphan1 = reply("o1", "deleted1");
+        var underOrphan = reply("x", "o1");
+        var orphan2 = reply("o2", "deleted2");
+        var orphan3 = reply("o3", "deleted1");
+        var b = reply("b", "root");
+
+        var tree = new ReplyTree("root", List.of(a, orphan1, underOrphan, orphan2, orphan3, b));
+
+        assertThat(ids(tree.children(null))).containsExactly("a", "o1", "o2", "o3", "b");
+        // An orphan keeps its own replies
+        assertThat(ids(tree.children(orphan1))).containsExactly("x");
+    }
+
+    @Test
+    void replyWithoutParentIdHangsFromTheRoot() {
+        var tree = new ReplyTree("root", List.of(reply("a", null)));
+
+        assertThat(ids(tree.children(null))).containsExactly("a");
+    }
+
+    @Test
+    void dataProviderPagesTheChildren() {
+        var replies = List.of(reply("a", "root"), reply("b", "root"), reply("c", "root"), reply("d", "a"));
+        var provider = new ReplyTree("root", replies).dataProvider();
+
+        assertThat(provider.getChildCount(new HierarchicalQuery<>(null, null))).isEqualTo(3);
+        var page = provider.fetchChildren(new HierarchicalQuery<>(1, 5, List.of(), null, null, null)).toList();
+        assertThat(ids(page)).containsExactly("b", "c");
+        assertThat(provider.hasChildren(replies.get(0))).isTrue();
+    }
+
+    private static MastodonPost reply(String id, String inReplyToId) {
+        var post = new MastodonPost();
+        post.setId(id);
+        post.setInReplyToId(inReplyToId);
+        return post;
+    }
+
+    private static List<String> ids(List<MastodonPost> posts) {
+        return posts.stream().map(MastodonPost::getId).toList();
+    }
+}
@@ -0,0 +1,77 @@
+package antix.views.main;
+
+import antix.model.MastodonPost;
+import antix.service.TimelineCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link TagTimelinePager} over a stand-in timeline whose posts can be
+ * deleted between fetches.
+ */
+class TagTimelinePagerTest {
+    private static final int PAGE = TagTimelinePager.PAGE_SIZE;
+
+    // The whole timeline, newest first, with decreasing numeric ids
+    private final List<MastodonPost> timeline = new ArrayList<>();
+    private final TimelineCache timelineCache = mock(TimelineCache.class);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (int i = 1_000; i > 0; i--) {
+            var post = new MastodonPost();
+            post.setId(String.valueOf(i));
+            timeline.add(post);
+        }
+        when(timelineCache.get("java")).thenAnswer(invocation -> List.copyOf(timeline.subList(0, PAGE)));
+        when(timelineCache.getOlder(eq("java"), anyString(), anyInt())).thenAnswer(invocation -> {
+            long maxId = Long.parseLong(invocation.getArgument(1));
+            int limit = invocation.getArgument(2);
+            return timeline.stream().filter(post -> Long.parseLong(post.getId()) < maxId).limit(limit).toList();
+        });
+    }
+
+    @Test
+    void refetchedPageKeepsItsRowsWhenPostsWereDeleted() {
+        var pager = new TagTimelinePager("java", timelineCache);
+        // Scroll far enough for the second page to be dropped from memory
+        int pages = TagTimelinePager.MAX_CACHED_PAGES + 3;
+        for (int page = 0; page < pages; page++) {
+            pager.fetch(page * PAGE, PAGE);
+        }
+        assertThat(pager.peek(PAGE)).isEmpty();
+        var before = ids(pager.fetch(2 * PAGE, PAGE));
+
+        // Three posts of the second page are deleted upstream
+        var deleted = List.of(timeline.get(PAGE).getId(), timeline.get(PAGE + 5).getId(),
+                timeline.get(2 * PAGE - 1).getId());
+        timeline.removeIf(post -> deleted.contains(post.getId()));
+
+        var rows = pager.fetch(PAGE, PAGE);
+
+        assertThat(rows).hasSize(PAGE);
+        IntStream.range(0, PAGE).forEach(row ->
+                assertThat(pager.indexOf(rows.get(row))).isEqualTo(PAGE + row));
+        assertThat(rows).filteredOn(post -> "(supprimé)".equals(post.getPlainText()))
+                .extracting(MastodonPost::getId).containsExactlyElementsOf(deleted);
+        // The posts of the third page that moved up upstream stay on their own rows
+        assertThat(ids(rows)).doesNotContainAnyElementsOf(before);
+        assertThat(ids(pager.fetch(2 * PAGE, PAGE))).isEqualTo(before);
+    }
+
+    private static List<String> ids(List<MastodonPost> posts) {
+        return posts.stream().map(MastodonPost::getId).toList();
+    }
+}